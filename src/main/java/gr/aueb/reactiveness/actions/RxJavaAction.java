@@ -10,10 +10,11 @@ import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiInvalidElementAccessException;
 import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.PsiManager;
-import com.intellij.psi.search.FileTypeIndex;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.util.indexing.FileBasedIndex;
+import gr.aueb.reactiveness.pattern.LegacyPatternMigration;
 import gr.aueb.reactiveness.refactor.AsyncTaskRefactor;
+import gr.aueb.reactiveness.report.MigrationPhase;
+import gr.aueb.reactiveness.report.MigrationReport;
 import gr.aueb.reactiveness.utils.ReactivenessUtils;
 import org.jetbrains.annotations.NotNull;
 
@@ -34,10 +35,27 @@ public class RxJavaAction extends AnAction {
             return;
         }
 
-        AsyncTaskRefactor refactor = new AsyncTaskRefactor();
-        // retrieve all virtualFiles from project
-        Collection<VirtualFile> virtualFiles = FileBasedIndex.getInstance()
-            .getContainingFiles(FileTypeIndex.NAME, JavaFileType.INSTANCE, GlobalSearchScope.projectScope(project));
+        MigrationReport report = new MigrationReport();
+        migrate(project, GlobalSearchScope.projectScope(project), report);
+        report.finish(project);
+    }
+
+    /**
+     * Migrate the asyncTasks and the legacy concurrency patterns of the java files in the scope, recording the
+     * run on the report.
+     *
+     * @param project the project
+     * @param scope   the scope of the java files to migrate
+     * @param report  the migration report
+     */
+    public void migrate(final Project project, final GlobalSearchScope scope, final MigrationReport report) {
+        AsyncTaskRefactor refactor = new AsyncTaskRefactor(report);
+        LegacyPatternMigration patternMigration = new LegacyPatternMigration(report);
+        // retrieve all virtualFiles from scope
+        Collection<VirtualFile> virtualFiles;
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.FILE_ENUMERATION)) {
+            virtualFiles = ReactivenessUtils.findJavaFiles(scope);
+        }
         //List<PsiClass> standaloneClasses = new ArrayList<>();
         Map<PsiClass, PsiClass> parentInnerClass = new HashMap<>();
         virtualFiles.forEach(virtualFile -> {
@@ -48,6 +66,7 @@ public class RxJavaAction extends AnAction {
                 if (Objects.requireNonNull(psiJavaFile).getClasses().length == 0) {
                     return;
                 }
+                report.increment(MigrationReport.FILES);
                 PsiClass javaFileClass = Objects.requireNonNull(psiJavaFile).getClasses()[0];
                 //Todo: Standalone AsyncTask refactor functionality is not supported yet
                 //if (ReactivenessUtils.findIfExtendsAsyncTask(javaFileClass) && ReactivenessUtils
@@ -56,16 +75,32 @@ public class RxJavaAction extends AnAction {
                 //
                 //}
 
+                //migrate threads, runOnUiThread and loaders before the asyncTasks are searched
+                patternMigration.migrate(JavaPsiFacade.getElementFactory(project), javaFileClass);
+
                 //search for anonymous AsyncTask
-                if (ReactivenessUtils.findAnonymousAsyncTaskExist(javaFileClass)) {
-                    refactor.refactorAnonymousAsyncTaskToInner(JavaPsiFacade.getElementFactory(project), javaFileClass);
+                boolean anonymousExist;
+                try (MigrationReport.Measurement ignored = report
+                    .start(MigrationPhase.ANONYMOUS_SEARCH, virtualFile)) {
+                    anonymousExist = ReactivenessUtils.findAnonymousAsyncTaskExist(javaFileClass);
+                }
+                if (anonymousExist) {
+                    report.increment(MigrationReport.ANONYMOUS_FILES);
+                    try (MigrationReport.Measurement ignored = report
+                        .start(MigrationPhase.ANONYMOUS_CONVERSION, virtualFile)) {
+                        refactor.refactorAnonymousAsyncTaskToInner(JavaPsiFacade.getElementFactory(project),
+                            javaFileClass);
+                    }
                 }
                 //search for inner classes
-                try {
+                try (MigrationReport.Measurement ignored = report
+                    .start(MigrationPhase.INNER_CLASS_SEARCH, virtualFile)) {
                     for (PsiClass javaInnerClass : javaFileClass.getInnerClasses()) {
                         if (ReactivenessUtils.findIfExtendsAsyncTask(javaInnerClass) && ReactivenessUtils
                             .findIfDoInBackgroundExist(javaInnerClass)) {
                             parentInnerClass.put(javaFileClass, javaInnerClass);
+                            report.increment(MigrationReport.INNER_TASKS);
+                            report.incrementTasks(javaInnerClass);
                         }
                     }
                 } catch (PsiInvalidElementAccessException e) {
@@ -73,7 +108,7 @@ public class RxJavaAction extends AnAction {
                 }
             }
         });
-        doRefactor(parentInnerClass, project);
+        doRefactor(parentInnerClass, project, refactor);
     }
 
     @Override
@@ -88,7 +123,18 @@ public class RxJavaAction extends AnAction {
      * @param project          the project
      */
     public void doRefactor(final Map<PsiClass, PsiClass> parentInnerClass, final Project project) {
-        AsyncTaskRefactor refactor = new AsyncTaskRefactor();
+        doRefactor(parentInnerClass, project, new AsyncTaskRefactor());
+    }
+
+    /**
+     * Call to refactor inner AsyncTask with the given refactor.
+     *
+     * @param parentInnerClass the parent inner class
+     * @param project          the project
+     * @param refactor         the refactor
+     */
+    public void doRefactor(final Map<PsiClass, PsiClass> parentInnerClass, final Project project,
+                           final AsyncTaskRefactor refactor) {
         if (!parentInnerClass.isEmpty()) {
             refactor.refactorInnerAsyncTask(JavaPsiFacade.getElementFactory(project), parentInnerClass);
         }
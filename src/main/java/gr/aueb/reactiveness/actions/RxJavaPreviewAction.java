@@ -0,0 +1,23 @@
+package gr.aueb.reactiveness.actions;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import gr.aueb.reactiveness.preview.MigrationPreviewTask;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Previews the migration of asyncTask to RxJava2 and applies only the tasks the user accepts.
+ */
+public class RxJavaPreviewAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = event.getProject();
+        if (project == null || project.isDisposed()) {
+            return;
+        }
+        ProgressManager.getInstance().run(new MigrationPreviewTask(project));
+    }
+}
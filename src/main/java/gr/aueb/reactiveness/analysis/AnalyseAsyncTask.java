@@ -1,14 +1,44 @@
 package gr.aueb.reactiveness.analysis;
 
+import com.intellij.codeInsight.ExceptionUtil;
+import com.intellij.psi.JavaRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiCatchSection;
 import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassType;
+import com.intellij.psi.PsiCodeBlock;
+import com.intellij.psi.PsiDeclarationStatement;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiExpressionStatement;
+import com.intellij.psi.PsiJavaCodeReferenceElement;
 import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiLambdaExpression;
 import com.intellij.psi.PsiLocalVariable;
+import com.intellij.psi.PsiMember;
 import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.PsiModifier;
 import com.intellij.psi.PsiNewExpression;
+import com.intellij.psi.PsiParameter;
 import com.intellij.psi.PsiReference;
 import com.intellij.psi.PsiReferenceExpression;
+import com.intellij.psi.PsiStatement;
+import com.intellij.psi.PsiSuperExpression;
+import com.intellij.psi.PsiTryStatement;
+import com.intellij.psi.PsiThisExpression;
+import com.intellij.psi.PsiType;
+import com.intellij.psi.PsiTypeElement;
+import com.intellij.psi.PsiVariable;
+import com.intellij.psi.search.LocalSearchScope;
 import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import com.intellij.util.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Analyse asyncTask implementation for validity.
@@ -25,7 +55,7 @@ public final class AnalyseAsyncTask {
 
     /**
      * Analyse if valid to refactor.
-     * 1)check if InnerTask has constructor and initialize fields
+     * 1)check if InnerTask has a constructor that does more than assigning its parameters to fields
      * 2)search if forbidden method has been found. Those methods are AsyncTask.isCancelled()
      * and AsyncTask.getStatus().
      *
@@ -34,13 +64,11 @@ public final class AnalyseAsyncTask {
     public static boolean isInvalidToRefactor(final PsiClass asyncTaskClass) {
         boolean isInvalid = false;
 
-        for(PsiMethod method : asyncTaskClass.getMethods()){
-            if(method.getName().equals(asyncTaskClass.getName()) && !method.getParameterList().isEmpty()){
-                return true;
-            }
+        if (TaskConstructor.analyse(asyncTaskClass).isInvalid()) {
+            return true;
         }
         //search if forbidden method is called
-        for (PsiReference reference : ReferencesSearch.search(asyncTaskClass)) {
+        for (PsiReference reference : searchReferences(asyncTaskClass)) {
             PsiElement ref = reference.getElement();
             if (ref.getContainingFile() != asyncTaskClass.getContainingFile()
                                 || ref.getParent().getParent() instanceof PsiField) {
@@ -58,4 +86,336 @@ public final class AnalyseAsyncTask {
         }
         return isInvalid;
     }
+
+    /**
+     * Find the execute calls of the asyncTask. Those are the calls on local variables that hold a new instance
+     * of the task and the direct new AsyncTask().execute() calls.
+     *
+     * @param asyncTask      the async task class
+     * @param localVariables collects the local variables that hold the task instances
+     * @return the execute calls
+     */
+    public static List<PsiMethodCallExpression> findExecuteCalls(final PsiClass asyncTask,
+                                                                 final List<PsiLocalVariable> localVariables) {
+        return findExecuteCalls(asyncTask, localVariables, new ArrayList<>());
+    }
+
+    /**
+     * Find the blocking get() calls on the executions of the asyncTask and analyse if each one of them can
+     * become asynchronous. AsyncTask.execute() must be called on the main thread, so every one of them blocks
+     * the main thread.
+     *
+     * @param asyncTask the async task class
+     * @return the blocking get calls
+     */
+    public static List<BlockingGet> findBlockingGets(final PsiClass asyncTask) {
+        List<PsiMethodCallExpression> separateGetCalls = new ArrayList<>();
+        return findBlockingGets(findExecuteCalls(asyncTask, new ArrayList<>(), separateGetCalls), separateGetCalls);
+    }
+
+    private static List<BlockingGet> findBlockingGets(final List<PsiMethodCallExpression> executeCalls,
+                                                      final List<PsiMethodCallExpression> separateGetCalls) {
+        List<BlockingGet> blockingGets = new ArrayList<>();
+        for (PsiMethodCallExpression executeCall : executeCalls) {
+            BlockingGet blockingGet = analyseBlockingGet(executeCall);
+            if (blockingGet != null) {
+                blockingGets.add(blockingGet);
+            }
+        }
+        separateGetCalls.forEach(getCall -> blockingGets.add(new BlockingGet(getCall, null,
+            PsiTreeUtil.getParentOfType(getCall, PsiStatement.class), null, null,
+            "get() is called apart from execute()")));
+        return blockingGets;
+    }
+
+    /**
+     * Analyse if get() is called on the result of the execute call.
+     *
+     * @param executeCall the execute call
+     * @return the blocking get, null if get() is not called on the execute call
+     */
+    public static BlockingGet analyseBlockingGet(final PsiMethodCallExpression executeCall) {
+        PsiElement parent = executeCall.getParent();
+        if (!(parent instanceof PsiReferenceExpression) || !(parent.getParent() instanceof PsiMethodCallExpression)
+            || !"get".equals(((PsiReferenceExpression) parent).getReferenceName())) {
+            return null;
+        }
+        PsiMethodCallExpression getCall = (PsiMethodCallExpression) parent.getParent();
+        PsiStatement statement = PsiTreeUtil.getParentOfType(getCall, PsiStatement.class);
+        PsiMethod method = PsiTreeUtil.getParentOfType(getCall, PsiMethod.class, true,
+            PsiLambdaExpression.class, PsiClass.class);
+        if (method == null || method.getBody() == null || statement == null) {
+            return hotspot(getCall, executeCall, statement, "get() is not called directly inside a method");
+        }
+        if (!PsiType.VOID.equals(method.getReturnType())) {
+            return hotspot(getCall, executeCall, statement, "the calling method returns a value");
+        }
+        PsiElement getParent = PsiUtil.skipParenthesizedExprUp(getCall.getParent());
+        boolean resultIgnored = getParent instanceof PsiExpressionStatement;
+        boolean resultDeclared = getParent instanceof PsiLocalVariable
+            && statement instanceof PsiDeclarationStatement
+            && ((PsiDeclarationStatement) statement).getDeclaredElements().length == 1;
+        if (!resultIgnored && !resultDeclared) {
+            return hotspot(getCall, executeCall, statement, "the result of get() is used inside an expression");
+        }
+
+        // the exceptions of get() become the errors of the chain, so they must be handled by a try statement
+        // that wraps the rest of the method
+        PsiCodeBlock body = method.getBody();
+        if (!(statement.getParent() instanceof PsiCodeBlock)
+            || !(statement.getParent().getParent() instanceof PsiTryStatement)
+            || ((PsiTryStatement) statement.getParent().getParent()).getTryBlock() != statement.getParent()
+            || statement.getParent().getParent().getParent() != body) {
+            return hotspot(getCall, executeCall, statement,
+                "get() is not called inside a try statement of the method body");
+        }
+        PsiTryStatement tryStatement = (PsiTryStatement) statement.getParent().getParent();
+        if (tryStatement.getResourceList() != null || tryStatement.getFinallyBlock() != null) {
+            return hotspot(getCall, executeCall, statement, "the try statement has resources or finally");
+        }
+        if (PsiTreeUtil.getNextSiblingOfType(tryStatement, PsiStatement.class) != null) {
+            return hotspot(getCall, executeCall, statement, "code follows the try statement of get()");
+        }
+        String reason = analyseCatchSections(getCall, tryStatement);
+        if (reason != null) {
+            return hotspot(getCall, executeCall, statement, reason);
+        }
+        PsiCatchSection catchSection = tryStatement.getCatchSections()[0];
+        reason = analysePreviousStatements(statement, tryStatement);
+        if (reason != null) {
+            return hotspot(getCall, executeCall, statement, reason);
+        }
+
+        List<PsiElement> movedCode = new ArrayList<>();
+        for (PsiStatement next = PsiTreeUtil.getNextSiblingOfType(statement, PsiStatement.class); next != null;
+             next = PsiTreeUtil.getNextSiblingOfType(next, PsiStatement.class)) {
+            movedCode.add(next);
+        }
+        movedCode.add(catchSection.getCatchBlock());
+        for (PsiElement element : movedCode) {
+            if (!ExceptionUtil.collectUnhandledExceptions(element, element).isEmpty()) {
+                return hotspot(getCall, executeCall, statement,
+                    "the code after get() throws checked exceptions");
+            }
+            if (referencesMutableLocal(element, method, movedCode)) {
+                return hotspot(getCall, executeCall, statement,
+                    "the code after get() uses local variables that are not effectively final");
+            }
+        }
+        return new BlockingGet(getCall, executeCall, statement, tryStatement, catchSection, null);
+    }
+
+    /**
+     * Find if code uses instance state: if it refers to this, to instance members of the classes that contain it
+     * without a qualifier, or creates inner classes of them.
+     *
+     * @param code the method or expression
+     * @return true if the code cannot run without the instance
+     */
+    public static boolean usesInstanceState(final PsiElement code) {
+        boolean[] instanceState = {false};
+        code.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitThisExpression(PsiThisExpression expression) {
+                instanceState[0] = true;
+            }
+
+            @Override
+            public void visitSuperExpression(PsiSuperExpression expression) {
+                instanceState[0] = true;
+            }
+
+            @Override
+            public void visitReferenceExpression(PsiReferenceExpression expression) {
+                super.visitReferenceExpression(expression);
+                PsiExpression qualifier = expression.getQualifierExpression();
+                PsiElement target = expression.resolve();
+                if (qualifier == null && target instanceof PsiMember && !(target instanceof PsiClass)
+                    && !((PsiMember) target).hasModifierProperty(PsiModifier.STATIC)
+                    && !PsiTreeUtil.isAncestor(code, target, true)) {
+                    instanceState[0] = true;
+                }
+            }
+
+            @Override
+            public void visitNewExpression(PsiNewExpression expression) {
+                super.visitNewExpression(expression);
+                PsiJavaCodeReferenceElement reference = expression.getClassReference();
+                PsiElement created = reference == null ? null : reference.resolve();
+                if (created instanceof PsiClass && ((PsiClass) created).getContainingClass() != null
+                    && !((PsiClass) created).hasModifierProperty(PsiModifier.STATIC)
+                    && !PsiTreeUtil.isAncestor(code, created, true)) {
+                    instanceState[0] = true;
+                }
+            }
+        });
+        return instanceState[0];
+    }
+
+    private static List<PsiMethodCallExpression> findExecuteCalls(final PsiClass asyncTask,
+                                                                  final List<PsiLocalVariable> localVariables,
+                                                                  final List<PsiMethodCallExpression> getCalls) {
+        List<PsiElement> creations = new ArrayList<>();
+        searchReferences(asyncTask).forEach(reference -> {
+            //reference is finding the declaration two times so we will keep only the new Expression
+            if (!(reference.getElement().getParent() instanceof PsiTypeElement)) {
+                creations.add(reference.getElement().getParent());
+            }
+        });
+        return findExecuteCalls(creations, localVariables, getCalls);
+    }
+
+    private static List<PsiMethodCallExpression> findExecuteCalls(final List<PsiElement> creations,
+                                                                  final List<PsiLocalVariable> localVariables,
+                                                                  final List<PsiMethodCallExpression> getCalls) {
+        List<PsiMethodCallExpression> variableCalls = new ArrayList<>();
+        List<PsiMethodCallExpression> directCalls = new ArrayList<>();
+        for (PsiElement creation : creations) {
+            if (creation.getParent() instanceof PsiLocalVariable) {
+                PsiLocalVariable localVariable = (PsiLocalVariable) creation.getParent();
+                ReferencesSearch.search(localVariable).forEach((Consumer<PsiReference>) variableReference -> {
+                    PsiMethodCallExpression methodCallExpression = (PsiMethodCallExpression) PsiTreeUtil
+                        .findFirstParent(variableReference.getElement(), false,
+                            e -> e instanceof PsiMethodCallExpression);
+                    if (isExecuteCall(methodCallExpression)) {
+                        variableCalls.add(methodCallExpression);
+                    } else if (methodCallExpression != null
+                        && "get".equals(methodCallExpression.getMethodExpression().getReferenceName())) {
+                        getCalls.add(methodCallExpression);
+                    }
+                });
+                localVariables.add(localVariable);
+            } else if (creation.getParent().getParent() instanceof PsiMethodCallExpression) {
+                directCalls.add((PsiMethodCallExpression) creation.getParent().getParent());
+            }
+        }
+        // calls through local variables are refactored first, then the new AsyncTask().execute() ones
+        variableCalls.addAll(directCalls);
+        return variableCalls;
+    }
+
+    /**
+     * The references of the task. The copies of the files that the preview migrates are not indexed, so the
+     * references of a task of a copy are searched in its file only.
+     */
+    private static Query<PsiReference> searchReferences(final PsiClass asyncTask) {
+        return asyncTask.isPhysical() ? ReferencesSearch.search(asyncTask)
+            : ReferencesSearch.search(asyncTask, new LocalSearchScope(asyncTask.getContainingFile()));
+    }
+
+    private static boolean isExecuteCall(final PsiMethodCallExpression methodCallExpression) {
+        if (methodCallExpression == null) {
+            return false;
+        }
+        String methodName = methodCallExpression.getMethodExpression().getReferenceName();
+        return "execute".equals(methodName) || "executeOnExecutor".equals(methodName);
+    }
+
+    private static BlockingGet hotspot(final PsiMethodCallExpression getCall,
+                                       final PsiMethodCallExpression executeCall, final PsiStatement statement,
+                                       final String reason) {
+        return new BlockingGet(getCall, executeCall, statement, null, null, reason);
+    }
+
+    /**
+     * The catch sections become the single error handler of the chain, so they must handle only the
+     * exceptions of get(), have the same body and use the exception only as a Throwable.
+     */
+    private static String analyseCatchSections(final PsiMethodCallExpression getCall,
+                                               final PsiTryStatement tryStatement) {
+        List<String> getExceptions = Arrays.asList("java.lang.InterruptedException",
+            "java.util.concurrent.ExecutionException", "java.util.concurrent.TimeoutException",
+            "java.lang.Exception", "java.lang.Throwable");
+        PsiCatchSection[] catchSections = tryStatement.getCatchSections();
+        for (PsiClassType thrown : ExceptionUtil.collectUnhandledExceptions(getCall, getCall)) {
+            if (Arrays.stream(catchSections).flatMap(catchSection -> catchSection.getPreciseCatchTypes().stream())
+                .noneMatch(type -> type.isAssignableFrom(thrown))) {
+                return "the try statement of get() does not catch " + thrown.getPresentableText();
+            }
+        }
+        for (PsiCatchSection catchSection : catchSections) {
+            PsiParameter parameter = catchSection.getParameter();
+            if (parameter == null || catchSection.getCatchBlock() == null) {
+                return "the try statement of get() is incomplete";
+            }
+            for (PsiType type : catchSection.getPreciseCatchTypes()) {
+                if (!getExceptions.contains(type.getCanonicalText())) {
+                    return "the try statement of get() catches " + type.getPresentableText();
+                }
+            }
+            if (!catchSection.getCatchBlock().getText().equals(catchSections[0].getCatchBlock().getText())
+                || !parameter.getName().equals(catchSections[0].getParameter().getName())) {
+                return "the catch sections of get() handle the exceptions differently";
+            }
+            for (PsiReference reference : ReferencesSearch
+                .search(parameter, new LocalSearchScope(catchSection.getCatchBlock()))) {
+                PsiElement qualifierParent = reference.getElement().getParent();
+                PsiMethod calledMethod = qualifierParent instanceof PsiReferenceExpression
+                    && qualifierParent.getParent() instanceof PsiMethodCallExpression
+                    ? ((PsiMethodCallExpression) qualifierParent.getParent()).resolveMethod() : null;
+                PsiClass declaringClass = calledMethod == null ? null : calledMethod.getContainingClass();
+                if (declaringClass == null || !Arrays.asList("java.lang.Throwable", "java.lang.Object")
+                    .contains(declaringClass.getQualifiedName())) {
+                    return "the catch sections of get() use the exception as " + parameter.getType()
+                        .getPresentableText();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The statements of the try block before get() move before the try statement, out of the reach of the catch
+     * sections, so they may not throw exceptions that the catch sections handle.
+     */
+    private static String analysePreviousStatements(final PsiStatement statement,
+                                                    final PsiTryStatement tryStatement) {
+        boolean catchesUnchecked = Arrays.stream(tryStatement.getCatchSections())
+            .flatMap(catchSection -> catchSection.getPreciseCatchTypes().stream())
+            .anyMatch(type -> Arrays.asList("java.lang.Exception", "java.lang.Throwable")
+                .contains(type.getCanonicalText()));
+        for (PsiStatement previous = PsiTreeUtil.getPrevSiblingOfType(statement, PsiStatement.class);
+             previous != null; previous = PsiTreeUtil.getPrevSiblingOfType(previous, PsiStatement.class)) {
+            if (!ExceptionUtil.collectUnhandledExceptions(previous, previous).isEmpty()) {
+                return "the code before get() throws checked exceptions";
+            }
+            if (catchesUnchecked) {
+                return "the code before get() may throw runtime exceptions that the catch sections handle";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Code that moves into a lambda may only use the local variables of the method that are never reassigned.
+     */
+    private static boolean referencesMutableLocal(final PsiElement element, final PsiMethod method,
+                                                  final List<PsiElement> movedCode) {
+        boolean[] mutable = {false};
+        element.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitReferenceExpression(PsiReferenceExpression expression) {
+                super.visitReferenceExpression(expression);
+                PsiElement target = expression.resolve();
+                if (mutable[0] || !(target instanceof PsiLocalVariable || target instanceof PsiParameter)
+                    || !PsiTreeUtil.isAncestor(method, target, true)
+                    || movedCode.stream().anyMatch(moved -> PsiTreeUtil.isAncestor(moved, target, false))) {
+                    return;
+                }
+                PsiVariable variable = (PsiVariable) target;
+                if (variable instanceof PsiLocalVariable && variable.getInitializer() == null) {
+                    mutable[0] = true;
+                    return;
+                }
+                for (PsiReference reference : ReferencesSearch.search(variable, new LocalSearchScope(method))) {
+                    if (reference.getElement() instanceof PsiExpression
+                        && PsiUtil.isAccessedForWriting((PsiExpression) reference.getElement())) {
+                        mutable[0] = true;
+                        return;
+                    }
+                }
+            }
+        });
+        return mutable[0];
+    }
 }
@@ -0,0 +1,107 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.psi.PsiCatchSection;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.PsiStatement;
+import com.intellij.psi.PsiTryStatement;
+
+/**
+ * A blocking AsyncTask.get() call on the result of an execute call. The code that follows the get() call
+ * can move to the subscription of the Rx chain when it is the rest of a void method and a try statement
+ * handles the exceptions of get(), otherwise the call is reported as a main thread blocking hotspot.
+ *
+ * @author taggelis
+ */
+public class BlockingGet {
+
+    private final PsiMethodCallExpression getCall;
+    private final PsiMethodCallExpression executeCall;
+    private final PsiStatement statement;
+    private final PsiTryStatement tryStatement;
+    private final PsiCatchSection catchSection;
+    private final String hotspotReason;
+
+    /**
+     * Instantiates a new Blocking get.
+     *
+     * @param getCall       the get call
+     * @param executeCall   the execute call that get() is called on, null if get() is called apart from it
+     * @param statement     the statement of the get call
+     * @param tryStatement  the try statement that handles the exceptions of get(), null for a hotspot
+     * @param catchSection  the catch section that becomes the error handler of the chain, null for a hotspot
+     * @param hotspotReason why get() cannot become asynchronous, null if it can
+     */
+    BlockingGet(final PsiMethodCallExpression getCall, final PsiMethodCallExpression executeCall,
+                final PsiStatement statement, final PsiTryStatement tryStatement,
+                final PsiCatchSection catchSection, final String hotspotReason) {
+        this.getCall = getCall;
+        this.executeCall = executeCall;
+        this.statement = statement;
+        this.tryStatement = tryStatement;
+        this.catchSection = catchSection;
+        this.hotspotReason = hotspotReason;
+    }
+
+    /**
+     * Gets get call.
+     *
+     * @return the get call
+     */
+    public PsiMethodCallExpression getGetCall() {
+        return getCall;
+    }
+
+    /**
+     * Gets execute call.
+     *
+     * @return the execute call
+     */
+    public PsiMethodCallExpression getExecuteCall() {
+        return executeCall;
+    }
+
+    /**
+     * Gets the statement of the get call.
+     *
+     * @return the statement
+     */
+    public PsiStatement getStatement() {
+        return statement;
+    }
+
+    /**
+     * Gets try statement.
+     *
+     * @return the try statement
+     */
+    public PsiTryStatement getTryStatement() {
+        return tryStatement;
+    }
+
+    /**
+     * Gets catch section.
+     *
+     * @return the catch section
+     */
+    public PsiCatchSection getCatchSection() {
+        return catchSection;
+    }
+
+    /**
+     * Gets hotspot reason.
+     *
+     * @return the hotspot reason
+     */
+    public String getHotspotReason() {
+        return hotspotReason;
+    }
+
+    /**
+     * Is hotspot boolean.
+     *
+     * @return true if get() cannot become asynchronous
+     */
+    public boolean isHotspot() {
+        return hotspotReason != null;
+    }
+}
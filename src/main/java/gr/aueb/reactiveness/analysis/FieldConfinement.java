@@ -0,0 +1,204 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.psi.CommonClassNames;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiPrimitiveType;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.PsiVariable;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import gr.aueb.reactiveness.utils.Commons;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Classifies the fields of an asyncTask by the threads that access them. doInBackground runs on a background
+ * thread and the other lifecycle methods on the main thread. Once the task is migrated, concurrent executions
+ * share the fields that move to the parent class, so only the fields that a single thread accesses, or that
+ * nobody writes and hold an immutable value, can move there. A field that nobody writes may still hold a mutable
+ * object, such as a list that the background fills, so it is read only for both threads only when its type is
+ * a primitive, a boxed primitive or a String. The fields that the background fills for onPostExecute are handed
+ * over with the result of the chain instead, and the rest are unsafe.
+ *
+ * @author taggelis
+ */
+public class FieldConfinement {
+
+    /**
+     * The confinement of a field.
+     */
+    public enum Confinement {
+        /**
+         * Accessed only by doInBackground, becomes a local variable of it.
+         */
+        BACKGROUND_ONLY,
+        /**
+         * Accessed only by the methods that run on the main thread, moves to the parent class.
+         */
+        MAIN_ONLY,
+        /**
+         * Written or filled by doInBackground and read by onPostExecute, handed over with the result.
+         */
+        HANDED_OVER,
+        /**
+         * Never written after its initialization and immutable, or never used by doInBackground, moves to the
+         * parent class.
+         */
+        READ_ONLY,
+        /**
+         * Accessed by both threads in a way that cannot be confined, moves to the parent class and is reported.
+         */
+        UNSAFE
+    }
+
+    private static final String ON_POST_EXECUTE = "onPostExecute";
+    private static final List<String> MAIN_THREAD_METHODS = Arrays.asList("onPreExecute", ON_POST_EXECUTE,
+        "onProgressUpdate", "onCancelled");
+
+    private final Map<PsiField, Confinement> confinements = new LinkedHashMap<>();
+    private final Map<PsiField, String> unsafeReasons = new LinkedHashMap<>();
+
+    /**
+     * Analyse the fields of the asyncTask, except the fields that its constructor captures.
+     *
+     * @param asyncTask   the async task
+     * @param constructor the constructor of the task
+     * @return the field confinement
+     */
+    public static FieldConfinement analyse(final PsiClass asyncTask, final TaskConstructor constructor) {
+        FieldConfinement confinement = new FieldConfinement();
+        for (PsiField field : asyncTask.getFields()) {
+            if (!constructor.isCaptured(field)) {
+                confinement.classify(asyncTask, field);
+            }
+        }
+        return confinement;
+    }
+
+    /**
+     * Gets the confinement of a field.
+     *
+     * @param field the field
+     * @return the confinement, null for the captured fields
+     */
+    public Confinement getConfinement(final PsiField field) {
+        return confinements.get(field);
+    }
+
+    /**
+     * Gets the fields of a confinement, in the order of their declaration.
+     *
+     * @param confinement the confinement
+     * @return the fields
+     */
+    public List<PsiField> getFields(final Confinement confinement) {
+        return confinements.entrySet().stream()
+            .filter(entry -> entry.getValue() == confinement)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Is confined boolean.
+     *
+     * @param field the field
+     * @return true if the field does not move to the parent class
+     */
+    public boolean isConfined(final PsiField field) {
+        return confinements.get(field) == Confinement.BACKGROUND_ONLY
+            || confinements.get(field) == Confinement.HANDED_OVER;
+    }
+
+    /**
+     * Gets the reasons of the unsafe fields.
+     *
+     * @return the reason of every unsafe field
+     */
+    public Map<PsiField, String> getUnsafeReasons() {
+        return Collections.unmodifiableMap(unsafeReasons);
+    }
+
+    private void classify(final PsiClass asyncTask, final PsiField field) {
+        Set<String> readers = new TreeSet<>();
+        Set<String> writers = new TreeSet<>();
+        for (PsiReference reference : ReferencesSearch.search(field, new LocalSearchScope(asyncTask))) {
+            PsiMethod method = PsiTreeUtil.getParentOfType(reference.getElement(), PsiMethod.class);
+            if (method == null) {
+                unsafe(field, "it initializes another field of the task");
+                return;
+            }
+            boolean write = reference.getElement() instanceof PsiExpression
+                && PsiUtil.isAccessedForWriting((PsiExpression) reference.getElement());
+            (write ? writers : readers).add(method.getName());
+        }
+        Set<String> accessors = new TreeSet<>(readers);
+        accessors.addAll(writers);
+        Set<String> helpers = accessors.stream()
+            .filter(name -> !Commons.DO_IN_BACKGROUND.equals(name) && !MAIN_THREAD_METHODS.contains(name))
+            .collect(Collectors.toCollection(TreeSet::new));
+        Set<String> mainReaders = new TreeSet<>(readers);
+        mainReaders.remove(Commons.DO_IN_BACKGROUND);
+
+        if (!helpers.isEmpty()) {
+            unsafe(field, "it is used by " + String.join(", ", helpers) + " that may run on any thread");
+        } else if (writers.isEmpty() && (isImmutable(field) || !accessors.contains(Commons.DO_IN_BACKGROUND))) {
+            confinements.put(field, Confinement.READ_ONLY);
+        } else if (!accessors.contains(Commons.DO_IN_BACKGROUND)) {
+            confinements.put(field, Confinement.MAIN_ONLY);
+        } else if (accessors.equals(Collections.singleton(Commons.DO_IN_BACKGROUND))) {
+            confine(asyncTask, field, Confinement.BACKGROUND_ONLY, Commons.DO_IN_BACKGROUND);
+        } else if (Collections.singleton(Commons.DO_IN_BACKGROUND).containsAll(writers)
+            && mainReaders.equals(Collections.singleton(ON_POST_EXECUTE))) {
+            confine(asyncTask, field, Confinement.HANDED_OVER, Commons.DO_IN_BACKGROUND, ON_POST_EXECUTE);
+        } else if (writers.isEmpty()) {
+            unsafe(field, "it holds a mutable object that doInBackground and " + String.join(", ", mainReaders)
+                + " share on different threads");
+        } else {
+            unsafe(field, "it is written by " + String.join(", ", writers) + " and read by "
+                + String.join(", ", readers) + " on different threads");
+        }
+    }
+
+    /**
+     * An immutable value can be read by both threads once the field is initialized.
+     */
+    private static boolean isImmutable(final PsiField field) {
+        return field.getType() instanceof PsiPrimitiveType
+            || PsiPrimitiveType.getUnboxedType(field.getType()) != null
+            || field.getType().equalsToText(CommonClassNames.JAVA_LANG_STRING);
+    }
+
+    /**
+     * The field becomes a local variable or a parameter of the methods, unless they already declare its name.
+     */
+    private void confine(final PsiClass asyncTask, final PsiField field, final Confinement confinement,
+                         final String... methodNames) {
+        for (String methodName : methodNames) {
+            for (PsiMethod method : asyncTask.findMethodsByName(methodName, false)) {
+                if (PsiTreeUtil.findChildrenOfType(method, PsiVariable.class).stream()
+                    .anyMatch(variable -> field.getName().equals(variable.getName()))) {
+                    unsafe(field, "it is shadowed by a variable of " + methodName);
+                    return;
+                }
+            }
+        }
+        confinements.put(field, confinement);
+    }
+
+    private void unsafe(final PsiField field, final String reason) {
+        confinements.put(field, Confinement.UNSAFE);
+        unsafeReasons.put(field, reason);
+    }
+}
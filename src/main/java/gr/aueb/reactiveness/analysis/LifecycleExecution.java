@@ -0,0 +1,94 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.psi.PsiAnonymousClass;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiLambdaExpression;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.PsiNewExpression;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An execution of a migrated task that starts from onCreate of an Activity, so that every configuration change
+ * starts it again. Such an execution can keep its chain in a ViewModel of the Activity and reattach to it after the
+ * configuration change, if the chain does not hold the Activity that started it: the background method and the
+ * arguments must use no instance state. The executions of onStart and onResume are not kept, since these methods
+ * run again without a configuration change too, when the Activity comes back to the foreground.
+ *
+ * @author taggelis
+ */
+public final class LifecycleExecution {
+
+    private static final String ENTRY_POINT = "onCreate";
+    private static final List<String> VIEW_MODEL_OWNERS = Arrays.asList("AppCompatActivity", "FragmentActivity",
+        "ComponentActivity");
+
+    private LifecycleExecution() {
+    }
+
+    /**
+     * Is lifecycle start boolean.
+     *
+     * @param executeCall the execute call, after its task has been migrated
+     * @return true if the call is directly inside onCreate
+     */
+    public static boolean isLifecycleStart(final PsiMethodCallExpression executeCall) {
+        PsiElement scope = PsiTreeUtil.getParentOfType(executeCall, PsiMethod.class, PsiLambdaExpression.class,
+            PsiClass.class);
+        return scope instanceof PsiMethod && ENTRY_POINT.equals(((PsiMethod) scope).getName());
+    }
+
+    /**
+     * Find why the chain of a lifecycle start cannot be retained across configuration changes.
+     *
+     * @param executeCall      the execute call, a lifecycle start
+     * @param backgroundMethod the background method that the task has been extracted to
+     * @param progressUpdate   if the task publishes progress
+     * @return the reason, null if the chain can be retained
+     */
+    public static String analyse(final PsiMethodCallExpression executeCall, final PsiMethod backgroundMethod,
+                                 final boolean progressUpdate) {
+        PsiClass host = PsiTreeUtil.getParentOfType(executeCall, PsiClass.class);
+        if (host == null || !isViewModelOwner(host)) {
+            return "the Activity does not own ViewModels";
+        }
+        if (progressUpdate) {
+            return "the task publishes its progress to the Activity that started it";
+        }
+        if (AnalyseAsyncTask.analyseBlockingGet(executeCall) != null) {
+            return "the result of the task is waited by get()";
+        }
+        List<PsiElement> arguments = new ArrayList<>(Arrays.asList(executeCall.getArgumentList().getExpressions()));
+        PsiNewExpression creation = TaskConstructor.findCreation(executeCall);
+        if (creation != null && creation.getArgumentList() != null) {
+            arguments.addAll(Arrays.asList(creation.getArgumentList().getExpressions()));
+        }
+        // the arguments read a field or call a method of the Activity through its implicit this as well, and an
+        // anonymous class that onCreate creates holds the Activity even when it uses none of its members
+        for (PsiElement argument : arguments) {
+            if (AnalyseAsyncTask.usesInstanceState(argument)
+                || PsiTreeUtil.findChildOfType(argument, PsiAnonymousClass.class) != null) {
+                return "the arguments of the task refer to the Activity";
+            }
+        }
+        if (AnalyseAsyncTask.usesInstanceState(backgroundMethod)) {
+            return "the background method uses the state of the Activity";
+        }
+        return null;
+    }
+
+    private static boolean isViewModelOwner(final PsiClass host) {
+        if (host.getExtendsList() != null && Arrays.stream(host.getExtendsList().getReferencedTypes())
+            .anyMatch(type -> VIEW_MODEL_OWNERS.contains(type.getClassName()))) {
+            return true;
+        }
+        return InheritanceUtil.isInheritor(host, "androidx.activity.ComponentActivity")
+            || InheritanceUtil.isInheritor(host, "androidx.fragment.app.FragmentActivity");
+    }
+}
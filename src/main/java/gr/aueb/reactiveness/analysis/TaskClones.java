@@ -0,0 +1,367 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.psi.JavaRecursiveElementWalkingVisitor;
+import com.intellij.psi.JavaTokenType;
+import com.intellij.psi.PsiAnnotation;
+import com.intellij.psi.PsiArrayInitializerExpression;
+import com.intellij.psi.PsiArrayType;
+import com.intellij.psi.PsiAssignmentExpression;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassType;
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiIdentifier;
+import com.intellij.psi.PsiJavaCodeReferenceElement;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiLambdaExpression;
+import com.intellij.psi.PsiLiteralExpression;
+import com.intellij.psi.PsiLocalVariable;
+import com.intellij.psi.PsiMember;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiParameter;
+import com.intellij.psi.PsiPrimitiveType;
+import com.intellij.psi.PsiReferenceExpression;
+import com.intellij.psi.PsiReturnStatement;
+import com.intellij.psi.PsiSwitchLabelStatement;
+import com.intellij.psi.PsiType;
+import com.intellij.psi.PsiVariable;
+import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import gr.aueb.reactiveness.utils.Commons;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Groups the asyncTasks of a project whose doInBackground methods are structurally identical, so that their
+ * background work can be extracted once into a shared helper. Two methods are identical when they are in the same
+ * module and their signatures and bodies have the same tokens, after the local variables and the parameters are
+ * renamed by order of appearance and the literals are replaced by their type. The literals that differ inside a
+ * group become parameters of the helper. The literals that must stay compile time constants, in case labels,
+ * annotations, the final local variables that case labels use or the int constants that are narrowed to a byte,
+ * short or char, cannot be parameters, so they are kept as they are in the tokens and the clones must have the
+ * same ones.
+ * Only self contained methods can be shared: they may not use the state of the task or its parent class, refer
+ * to members without a qualifier, assign their parameters or use members that the helper cannot access.
+ *
+ * @author taggelis
+ */
+public final class TaskClones {
+
+    private final List<PsiClass> tasks;
+    private final List<PsiMethod> backgroundMethods;
+    private final List<List<PsiLiteralExpression>> literals;
+    private final String helperPackage;
+
+    private TaskClones(final List<Candidate> candidates, final String helperPackage) {
+        this.tasks = candidates.stream().map(candidate -> candidate.task).collect(Collectors.toList());
+        this.backgroundMethods = candidates.stream().map(candidate -> candidate.backgroundMethod)
+            .collect(Collectors.toList());
+        this.literals = candidates.stream().map(candidate -> candidate.literals).collect(Collectors.toList());
+        this.helperPackage = helperPackage;
+    }
+
+    /**
+     * Detect the groups of clones among the asyncTasks.
+     *
+     * @param asyncTasks the async tasks that are going to be migrated
+     * @return the groups of at least two tasks
+     */
+    public static List<TaskClones> detect(final Collection<PsiClass> asyncTasks) {
+        Map<String, List<Candidate>> fingerprints = new LinkedHashMap<>();
+        for (PsiClass asyncTask : asyncTasks) {
+            PsiMethod[] backgroundMethods = asyncTask.findMethodsByName(Commons.DO_IN_BACKGROUND, false);
+            if (backgroundMethods.length != 1 || backgroundMethods[0].getBody() == null
+                || asyncTask.findMethodsByName("onProgressUpdate", false).length > 0
+                || !isSelfContained(backgroundMethods[0])) {
+                continue;
+            }
+            Candidate candidate = new Candidate(asyncTask, backgroundMethods[0]);
+            // the helper is only visible to the module that it is generated in. A copy of the preview is in the
+            // module of its original file
+            Module module = ModuleUtilCore.findModuleForPsiElement(asyncTask.getContainingFile().getOriginalFile());
+            String key = (module == null ? "" : module.getName()) + "\n" + candidate.fingerprint();
+            fingerprints.computeIfAbsent(key, f -> new ArrayList<>()).add(candidate);
+        }
+        List<TaskClones> groups = new ArrayList<>();
+        for (List<Candidate> candidates : fingerprints.values()) {
+            // the helper is generated next to the first task of the group
+            String helperPackage = packageName(candidates.get(0).task);
+            List<Candidate> accessible = candidates.stream()
+                .filter(candidate -> isAccessible(candidate.backgroundMethod, helperPackage))
+                .collect(Collectors.toList());
+            if (accessible.size() > 1) {
+                groups.add(new TaskClones(accessible, helperPackage));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Gets the tasks of the group.
+     *
+     * @return the tasks
+     */
+    public List<PsiClass> getTasks() {
+        return Collections.unmodifiableList(tasks);
+    }
+
+    /**
+     * Gets the doInBackground method that the helper is generated from.
+     *
+     * @return the doInBackground method of the first task
+     */
+    public PsiMethod getPrototype() {
+        return backgroundMethods.get(0);
+    }
+
+    /**
+     * Gets the package that the helper is generated in.
+     *
+     * @return the package name
+     */
+    public String getHelperPackage() {
+        return helperPackage;
+    }
+
+    /**
+     * Gets the indexes of the literals that differ between the tasks, in the order of their appearance.
+     *
+     * @return the indexes
+     */
+    public List<Integer> getVaryingLiterals() {
+        List<Integer> varying = new ArrayList<>();
+        for (int i = 0; i < literals.get(0).size(); i++) {
+            int index = i;
+            if (literals.stream().map(taskLiterals -> taskLiterals.get(index).getText()).distinct().count() > 1) {
+                varying.add(i);
+            }
+        }
+        return varying;
+    }
+
+    /**
+     * Gets the texts of the varying literals of a task, that it passes to the helper.
+     *
+     * @param task the task
+     * @return the literal texts
+     */
+    public List<String> getVaryingLiterals(final PsiClass task) {
+        List<PsiLiteralExpression> taskLiterals = literals.get(tasks.indexOf(task));
+        return getVaryingLiterals().stream()
+            .map(index -> taskLiterals.get(index).getText())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Is parameterizable boolean.
+     *
+     * @param literal the literal of a doInBackground method
+     * @return true if the literal can be replaced by a parameter of the helper, false if it must stay a compile
+     * time constant
+     */
+    public static boolean isParameterizable(final PsiLiteralExpression literal) {
+        if (isConstantContext(literal) || isNarrowedConstant(literal)) {
+            return false;
+        }
+        PsiElement context = literal.getParent();
+        while (context instanceof PsiExpression && PsiUtil.isConstantExpression((PsiExpression) context)) {
+            context = context.getParent();
+        }
+        if (!(context instanceof PsiLocalVariable)
+            || !((PsiLocalVariable) context).hasModifierProperty(PsiModifier.FINAL)) {
+            return true;
+        }
+        // the initializer of a constant variable that a case label uses
+        PsiMethod method = PsiTreeUtil.getParentOfType(context, PsiMethod.class);
+        return method == null || ReferencesSearch.search(context, new LocalSearchScope(method)).findAll().stream()
+            .noneMatch(reference -> isConstantContext(reference.getElement()));
+    }
+
+    private static boolean isConstantContext(final PsiElement element) {
+        return PsiTreeUtil.getParentOfType(element, PsiSwitchLabelStatement.class, PsiAnnotation.class) != null;
+    }
+
+    /**
+     * An int constant that is assigned to a byte, short or char, e.g. {@code byte b = 0x1F} or
+     * {@code new byte[]{1, 2}}, which compiles only because it is a constant. An int parameter would not.
+     */
+    private static boolean isNarrowedConstant(final PsiLiteralExpression literal) {
+        PsiExpression constant = literal;
+        while (constant.getParent() instanceof PsiExpression
+            && PsiUtil.isConstantExpression((PsiExpression) constant.getParent())) {
+            constant = (PsiExpression) constant.getParent();
+        }
+        if (!PsiType.INT.equals(constant.getType())) {
+            return false;
+        }
+        PsiElement parent = constant.getParent();
+        PsiType target = null;
+        if (parent instanceof PsiVariable && ((PsiVariable) parent).getInitializer() == constant) {
+            target = ((PsiVariable) parent).getType();
+        } else if (parent instanceof PsiAssignmentExpression
+            && ((PsiAssignmentExpression) parent).getOperationTokenType() == JavaTokenType.EQ
+            && ((PsiAssignmentExpression) parent).getRExpression() == constant) {
+            target = ((PsiAssignmentExpression) parent).getLExpression().getType();
+        } else if (parent instanceof PsiArrayInitializerExpression
+            && ((PsiArrayInitializerExpression) parent).getType() instanceof PsiArrayType) {
+            target = ((PsiArrayType) Objects.requireNonNull(((PsiArrayInitializerExpression) parent).getType()))
+                .getComponentType();
+        } else if (parent instanceof PsiReturnStatement) {
+            PsiElement method = PsiTreeUtil.getParentOfType(parent, PsiMethod.class, PsiLambdaExpression.class);
+            target = method instanceof PsiMethod ? ((PsiMethod) method).getReturnType() : null;
+        }
+        // a Byte, Short or Character is assigned the narrowed constant too
+        PsiType primitive = target instanceof PsiClassType ? PsiPrimitiveType.getUnboxedType(target) : target;
+        return PsiType.BYTE.equals(primitive) || PsiType.SHORT.equals(primitive) || PsiType.CHAR.equals(primitive);
+    }
+
+    /**
+     * A self contained method can be moved to another class as it is and called from a lambda.
+     */
+    private static boolean isSelfContained(final PsiMethod backgroundMethod) {
+        if (AnalyseAsyncTask.usesInstanceState(backgroundMethod)) {
+            return false;
+        }
+        boolean[] selfContained = {true};
+        backgroundMethod.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitReferenceExpression(PsiReferenceExpression expression) {
+                super.visitReferenceExpression(expression);
+                PsiElement target = expression.resolve();
+                if (target instanceof PsiParameter && PsiUtil.isAccessedForWriting(expression)) {
+                    selfContained[0] = false;
+                }
+            }
+
+            @Override
+            public void visitReferenceElement(PsiJavaCodeReferenceElement reference) {
+                super.visitReferenceElement(reference);
+                PsiElement target = reference.resolve();
+                boolean unqualified = !reference.isQualified();
+                if (unqualified && target instanceof PsiMember && !(target instanceof PsiClass)
+                    && !PsiTreeUtil.isAncestor(backgroundMethod, target, true)) {
+                    // static members of the parent class, or statically imported ones
+                    selfContained[0] = false;
+                } else if (unqualified && target instanceof PsiClass && ((PsiClass) target).getContainingClass() != null
+                    && !PsiTreeUtil.isAncestor(backgroundMethod, target, true)) {
+                    selfContained[0] = false;
+                }
+            }
+        });
+        return selfContained[0];
+    }
+
+    /**
+     * The members that the method uses must be public, or in the package of the helper and not private.
+     */
+    private static boolean isAccessible(final PsiMethod backgroundMethod, final String helperPackage) {
+        boolean[] accessible = {true};
+        backgroundMethod.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitReferenceElement(PsiJavaCodeReferenceElement reference) {
+                super.visitReferenceElement(reference);
+                PsiElement target = reference.resolve();
+                for (PsiMember member = target instanceof PsiMember ? (PsiMember) target : null; member != null
+                    && !PsiTreeUtil.isAncestor(backgroundMethod, member, true); member = member.getContainingClass()) {
+                    if (member.hasModifierProperty(PsiModifier.PRIVATE)
+                        || !member.hasModifierProperty(PsiModifier.PUBLIC)
+                        && !helperPackage.equals(packageName(member))) {
+                        accessible[0] = false;
+                    }
+                }
+            }
+        });
+        return accessible[0];
+    }
+
+    private static String packageName(final PsiElement element) {
+        return element.getContainingFile() instanceof PsiJavaFile
+            ? ((PsiJavaFile) element.getContainingFile()).getPackageName() : "";
+    }
+
+    /**
+     * A doInBackground method with its normalized tokens.
+     */
+    private static final class Candidate {
+
+        private final PsiClass task;
+        private final PsiMethod backgroundMethod;
+        private final List<PsiLiteralExpression> literals = new ArrayList<>();
+
+        private Candidate(final PsiClass task, final PsiMethod backgroundMethod) {
+            this.task = task;
+            this.backgroundMethod = backgroundMethod;
+        }
+
+        private String fingerprint() {
+            StringBuilder tokens = new StringBuilder();
+            tokens.append(Objects.requireNonNull(backgroundMethod.getReturnType()).getCanonicalText()).append('(');
+            for (PsiParameter parameter : backgroundMethod.getParameterList().getParameters()) {
+                tokens.append(parameter.getType().getCanonicalText()).append(',');
+            }
+            tokens.append(')');
+            Map<PsiVariable, Integer> variables = new HashMap<>();
+            Objects.requireNonNull(backgroundMethod.getBody()).accept(new JavaRecursiveElementWalkingVisitor() {
+                @Override
+                public void visitLiteralExpression(PsiLiteralExpression expression) {
+                    if (!isParameterizable(expression)) {
+                        tokens.append(' ').append(expression.getText());
+                        return;
+                    }
+                    literals.add(expression);
+                    tokens.append(" $literal:").append(expression.getType() == null ? ""
+                        : expression.getType().getCanonicalText());
+                }
+
+                @Override
+                public void visitElement(PsiElement element) {
+                    super.visitElement(element);
+                    if (element.getFirstChild() == null && !(element instanceof PsiWhiteSpace)
+                        && !(element instanceof PsiComment)) {
+                        tokens.append(' ').append(token(element, variables));
+                    }
+                }
+            });
+            return tokens.toString();
+        }
+
+        /**
+         * Local variables and parameters are numbered, the other names are qualified by what they resolve to.
+         */
+        private String token(final PsiElement leaf, final Map<PsiVariable, Integer> variables) {
+            if (!(leaf instanceof PsiIdentifier)) {
+                return leaf.getText();
+            }
+            PsiElement parent = leaf.getParent();
+            PsiElement target = parent instanceof PsiVariable ? parent
+                : parent instanceof PsiJavaCodeReferenceElement ? ((PsiJavaCodeReferenceElement) parent).resolve()
+                : null;
+            if ((target instanceof PsiLocalVariable || target instanceof PsiParameter)
+                && PsiTreeUtil.isAncestor(backgroundMethod, target, false)) {
+                return "$" + variables.computeIfAbsent((PsiVariable) target, v -> variables.size());
+            }
+            if (target instanceof PsiClass && ((PsiClass) target).getQualifiedName() != null) {
+                return ((PsiClass) target).getQualifiedName();
+            }
+            if (target instanceof PsiMember && ((PsiMember) target).getContainingClass() != null) {
+                return ((PsiMember) target).getContainingClass().getQualifiedName() + "#" + leaf.getText();
+            }
+            return leaf.getText();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.psi.JavaTokenType;
+import com.intellij.psi.PsiAssignmentExpression;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiExpressionStatement;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiLiteralExpression;
+import com.intellij.psi.PsiLocalVariable;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.PsiNewExpression;
+import com.intellij.psi.PsiParameter;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.PsiReferenceExpression;
+import com.intellij.psi.PsiStatement;
+import com.intellij.psi.PsiThisExpression;
+import com.intellij.psi.PsiVariable;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import gr.aueb.reactiveness.utils.Commons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state that an asyncTask receives from its constructor. A constructor that only assigns its parameters to
+ * fields of the task makes these fields captured: every execution passes their values as arguments of the
+ * extracted methods that use them, instead of sharing them as fields of the parent class.
+ *
+ * @author taggelis
+ */
+public class TaskConstructor {
+
+    private static final List<String> RECEIVERS = Arrays.asList(Commons.DO_IN_BACKGROUND, "onPreExecute",
+        "onPostExecute");
+
+    private final Map<PsiField, Integer> capturedFields;
+    private final Map<String, List<PsiField>> receivedFields = new LinkedHashMap<>();
+    private final String invalidReason;
+
+    private TaskConstructor(final Map<PsiField, Integer> capturedFields, final String invalidReason) {
+        this.capturedFields = capturedFields;
+        this.invalidReason = invalidReason;
+    }
+
+    /**
+     * Analyse the constructors of the asyncTask.
+     *
+     * @param asyncTask the async task
+     * @return the task constructor
+     */
+    public static TaskConstructor analyse(final PsiClass asyncTask) {
+        PsiMethod[] constructors = asyncTask.getConstructors();
+        if (constructors.length > 1) {
+            return invalid("the task has more than one constructor");
+        }
+        if (constructors.length == 0) {
+            return new TaskConstructor(Collections.emptyMap(), null);
+        }
+        PsiMethod constructor = constructors[0];
+        PsiParameter[] parameters = constructor.getParameterList().getParameters();
+        Map<PsiField, Integer> captured = new LinkedHashMap<>();
+        for (PsiStatement statement : constructor.getBody() == null ? PsiStatement.EMPTY_ARRAY
+            : constructor.getBody().getStatements()) {
+            if ("super();".equals(statement.getText())) {
+                continue;
+            }
+            PsiExpression expression = statement instanceof PsiExpressionStatement
+                ? ((PsiExpressionStatement) statement).getExpression() : null;
+            if (!(expression instanceof PsiAssignmentExpression)) {
+                return invalid("the constructor does more than assigning its parameters to fields");
+            }
+            PsiField field = assignedField((PsiAssignmentExpression) expression, asyncTask);
+            PsiExpression value = PsiUtil.skipParenthesizedExprDown(((PsiAssignmentExpression) expression)
+                .getRExpression());
+            PsiElement parameter = value instanceof PsiReferenceExpression
+                ? ((PsiReferenceExpression) value).resolve() : null;
+            int index = Arrays.asList(parameters).indexOf(parameter);
+            if (field == null || index < 0 || captured.containsKey(field)) {
+                return invalid("the constructor does more than assigning its parameters to fields");
+            }
+            captured.put(field, index);
+        }
+        TaskConstructor taskConstructor = new TaskConstructor(captured, null);
+        String reason = taskConstructor.validateUsages(asyncTask, constructor);
+        if (reason != null) {
+            return invalid(reason);
+        }
+        // resolved once, the migration turns the references of the methods to parameters
+        for (PsiMethod method : asyncTask.getMethods()) {
+            if (RECEIVERS.contains(method.getName())) {
+                List<PsiField> fields = new ArrayList<>();
+                for (PsiField field : taskConstructor.getCapturedFields()) {
+                    if (ReferencesSearch.search(field, new LocalSearchScope(method)).findFirst() != null) {
+                        fields.add(field);
+                    }
+                }
+                taskConstructor.receivedFields.put(method.getName(), fields);
+            }
+        }
+        return taskConstructor;
+    }
+
+    /**
+     * Gets the captured fields, in the order of the constructor parameters that they are assigned from.
+     *
+     * @return the captured fields
+     */
+    public List<PsiField> getCapturedFields() {
+        List<PsiField> fields = new ArrayList<>(capturedFields.keySet());
+        fields.sort((first, second) -> capturedFields.get(first) - capturedFields.get(second));
+        return fields;
+    }
+
+    /**
+     * Gets the captured fields that a method of the task uses, in the order of the constructor parameters.
+     *
+     * @param methodName the name of the method inside the task
+     * @return the captured fields
+     */
+    public List<PsiField> getCapturedFields(final String methodName) {
+        return receivedFields.getOrDefault(methodName, Collections.emptyList());
+    }
+
+    /**
+     * Is captured boolean.
+     *
+     * @param field the field
+     * @return true if the field is assigned from a constructor parameter
+     */
+    public boolean isCaptured(final PsiField field) {
+        return capturedFields.containsKey(field);
+    }
+
+    /**
+     * Gets the argument of the task creation that is assigned to a captured field.
+     *
+     * @param field    the captured field
+     * @param creation the new expression of the task
+     * @return the argument
+     */
+    public PsiExpression getArgument(final PsiField field, final PsiNewExpression creation) {
+        return creation.getArgumentList() == null ? null
+            : creation.getArgumentList().getExpressions()[capturedFields.get(field)];
+    }
+
+    /**
+     * Gets the value that an execution passes for a captured field. Literals are passed as they are, any other
+     * argument is evaluated once, before the chain, into a final local variable named after the disposable of
+     * the execution and the field.
+     *
+     * @param field        the captured field
+     * @param creation     the new expression of the task
+     * @param disposalName the name of the disposable of the execution
+     * @return the literal text or the name of the local variable
+     */
+    public String getCapturedValue(final PsiField field, final PsiNewExpression creation,
+                                   final String disposalName) {
+        PsiExpression argument = getArgument(field, creation);
+        if (argument instanceof PsiLiteralExpression) {
+            return argument.getText();
+        }
+        char[] fieldName = field.getName().toCharArray();
+        fieldName[0] = Character.toUpperCase(fieldName[0]);
+        return disposalName + new String(fieldName);
+    }
+
+    /**
+     * Gets invalid reason.
+     *
+     * @return why the task cannot be migrated, null if it can
+     */
+    public String getInvalidReason() {
+        return invalidReason;
+    }
+
+    /**
+     * Is invalid boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isInvalid() {
+        return invalidReason != null;
+    }
+
+    /**
+     * Find the new expression of the task that an execute call is called on, directly or through the local
+     * variable that it initializes.
+     *
+     * @param executeCall the execute call
+     * @return the new expression, null if it cannot be found
+     */
+    public static PsiNewExpression findCreation(final PsiMethodCallExpression executeCall) {
+        PsiExpression qualifier = PsiUtil.skipParenthesizedExprDown(executeCall.getMethodExpression()
+            .getQualifierExpression());
+        if (qualifier instanceof PsiReferenceExpression
+            && ((PsiReferenceExpression) qualifier).resolve() instanceof PsiLocalVariable) {
+            qualifier = PsiUtil.skipParenthesizedExprDown(
+                ((PsiLocalVariable) ((PsiReferenceExpression) qualifier).resolve()).getInitializer());
+        }
+        return qualifier instanceof PsiNewExpression ? (PsiNewExpression) qualifier : null;
+    }
+
+    private static TaskConstructor invalid(final String reason) {
+        return new TaskConstructor(Collections.emptyMap(), reason);
+    }
+
+    private static PsiField assignedField(final PsiAssignmentExpression assignment, final PsiClass asyncTask) {
+        if (assignment.getOperationTokenType() != JavaTokenType.EQ
+            || !(assignment.getLExpression() instanceof PsiReferenceExpression)) {
+            return null;
+        }
+        PsiReferenceExpression target = (PsiReferenceExpression) assignment.getLExpression();
+        PsiExpression qualifier = target.getQualifierExpression();
+        if (qualifier != null && !(qualifier instanceof PsiThisExpression
+            && ((PsiThisExpression) qualifier).getQualifier() == null)) {
+            return null;
+        }
+        PsiElement field = target.resolve();
+        return field instanceof PsiField && ((PsiField) field).getContainingClass() == asyncTask
+            ? (PsiField) field : null;
+    }
+
+    /**
+     * The captured fields are passed by value, so they may be only read, only by the methods that receive them
+     * as arguments and without being shadowed there. Every execution must create the task with new.
+     */
+    private String validateUsages(final PsiClass asyncTask, final PsiMethod constructor) {
+        if (!constructor.getParameterList().isEmpty() && AnalyseAsyncTask
+            .findExecuteCalls(asyncTask, new ArrayList<>()).stream().anyMatch(call -> findCreation(call) == null)) {
+            return "the task is executed apart from its creation";
+        }
+        for (PsiField field : capturedFields.keySet()) {
+            for (PsiReference reference : ReferencesSearch.search(field, new LocalSearchScope(asyncTask))) {
+                PsiMethod method = PsiTreeUtil.getParentOfType(reference.getElement(), PsiMethod.class);
+                if (method == constructor) {
+                    continue;
+                }
+                if (method == null || !RECEIVERS.contains(method.getName())) {
+                    return "the constructor state is used outside doInBackground, onPreExecute and onPostExecute";
+                }
+                if (reference.getElement() instanceof PsiExpression
+                    && PsiUtil.isAccessedForWriting((PsiExpression) reference.getElement())) {
+                    return "the constructor state is modified by the task";
+                }
+                if (PsiTreeUtil.findChildrenOfType(method, PsiVariable.class).stream()
+                    .anyMatch(variable -> field.getName().equals(variable.getName()))) {
+                    return "the constructor state is shadowed by " + method.getName();
+                }
+            }
+        }
+        return null;
+    }
+}
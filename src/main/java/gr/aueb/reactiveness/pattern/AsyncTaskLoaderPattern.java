@@ -0,0 +1,240 @@
+package gr.aueb.reactiveness.pattern;
+
+import com.intellij.codeInsight.intention.AddAnnotationPsiFix;
+import com.intellij.psi.JavaRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassType;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiExpressionStatement;
+import com.intellij.psi.PsiJavaCodeReferenceElement;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiNewExpression;
+import com.intellij.psi.PsiParameter;
+import com.intellij.psi.PsiReturnStatement;
+import com.intellij.psi.PsiStatement;
+import com.intellij.psi.PsiThisExpression;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import gr.aueb.reactiveness.refactor.RxHostSupport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A host that implements LoaderCallbacks for a single AsyncTaskLoader and starts it with
+ * {@code initLoader(id, args, this)}. The initLoader call becomes a Maybe that runs loadInBackground of a new
+ * loader on {@code Schedulers.io()}, onLoadFinished becomes the completion of the chain and the other callbacks
+ * are removed. The loader class is kept as the holder of the background work. The loader manager does not keep
+ * the loader across configuration changes anymore, so every configuration change loads the data again.
+ *
+ * @author taggelis
+ */
+public class AsyncTaskLoaderPattern implements LegacyConcurrencyPattern {
+
+    private static final String LOADER_CALLBACKS = "LoaderCallbacks";
+    private static final String ASYNC_TASK_LOADER = "AsyncTaskLoader";
+    private static final List<String> LOADER_METHODS = Arrays.asList("restartLoader", "getLoader", "destroyLoader");
+
+    @Override
+    public String getName() {
+        return ASYNC_TASK_LOADER;
+    }
+
+    @Override
+    public List<PsiElement> detect(final PsiClass psiClass) {
+        return new ArrayList<>(findLoaderCalls(psiClass, "initLoader"));
+    }
+
+    @Override
+    public String validate(final PsiElement occurrence) {
+        PsiMethodCallExpression initLoader = (PsiMethodCallExpression) occurrence;
+        PsiExpression[] arguments = initLoader.getArgumentList().getExpressions();
+        PsiClass host = findHost(initLoader);
+        if (arguments.length != 3 || !(arguments[2] instanceof PsiThisExpression)
+            || ((PsiThisExpression) arguments[2]).getQualifier() != null || host == null) {
+            return "the loader callbacks are not the host class";
+        }
+        if (!(initLoader.getParent() instanceof PsiExpressionStatement)) {
+            return "the loader returned by initLoader is used";
+        }
+        if (findLoaderCalls(host, "initLoader").size() != 1
+            || LOADER_METHODS.stream().anyMatch(name -> !findLoaderCalls(host, name).isEmpty())) {
+            return "the host starts more loaders or restarts and accesses its loader";
+        }
+        PsiMethod onCreateLoader = findCallback(host, "onCreateLoader");
+        PsiMethod onLoadFinished = findCallback(host, "onLoadFinished");
+        PsiMethod onLoaderReset = findCallback(host, "onLoaderReset");
+        if (onCreateLoader == null || onLoadFinished == null || onLoaderReset == null) {
+            return "the host does not implement the loader callbacks";
+        }
+        PsiNewExpression loaderCreation = loaderCreation(onCreateLoader);
+        if (loaderCreation == null) {
+            return "onCreateLoader does not only create the loader";
+        }
+        for (PsiParameter parameter : onCreateLoader.getParameterList().getParameters()) {
+            if (ReferencesSearch.search(parameter, new LocalSearchScope(loaderCreation)).findFirst() != null) {
+                return "the loader is created from the arguments of initLoader";
+            }
+        }
+        PsiJavaCodeReferenceElement loaderReference = loaderCreation.getClassReference();
+        PsiElement loaderClass = loaderReference == null ? null : loaderReference.resolve();
+        if (!(loaderClass instanceof PsiClass) || !extendsAsyncTaskLoader((PsiClass) loaderClass)) {
+            return "the loader is not an AsyncTaskLoader";
+        }
+        String reason = validateLoaderClass((PsiClass) loaderClass);
+        if (reason != null) {
+            return reason;
+        }
+        PsiParameter[] finishedParameters = onLoadFinished.getParameterList().getParameters();
+        if (finishedParameters.length != 2 || ReferencesSearch
+            .search(finishedParameters[0], new LocalSearchScope(onLoadFinished)).findFirst() != null) {
+            return "onLoadFinished uses the loader";
+        }
+        if (onLoaderReset.getBody().getStatements().length > 0) {
+            return "onLoaderReset releases the data of the loader";
+        }
+        return null;
+    }
+
+    @Override
+    public boolean restartsOnConfigurationChange(final PsiElement occurrence) {
+        return true;
+    }
+
+    @Override
+    public void rewrite(final PsiElementFactory factory, final PsiClass hostClass, final PsiElement occurrence) {
+        PsiMethodCallExpression initLoader = (PsiMethodCallExpression) occurrence;
+        PsiClass host = findHost(initLoader);
+        PsiMethod onCreateLoader = findCallback(host, "onCreateLoader");
+        PsiMethod onLoadFinished = findCallback(host, "onLoadFinished");
+        PsiMethod onLoaderReset = findCallback(host, "onLoaderReset");
+        PsiNewExpression loaderCreation = loaderCreation(onCreateLoader);
+        char[] loaderName = loaderCreation.getClassReference().getReferenceName().toCharArray();
+        loaderName[0] = Character.toLowerCase(loaderName[0]);
+        String loadFinished = new String(loaderName) + "LoadFinished";
+        String data = onLoadFinished.getParameterList().getParameters()[1].getName();
+        String error = new String(loaderName) + "Error";
+
+        // loadInBackground may return null, which a Maybe completes empty with and onLoadFinished still receives,
+        // and its failure crashed the thread of the loader, so it is thrown again instead of reaching the missing
+        // error handler of Rx
+        String chain = "Maybe.fromCallable(() -> " + loaderCreation.getText() + ".loadInBackground())\n"
+            + ".subscribeOn(Schedulers.io())\n"
+            + ".observeOn(AndroidSchedulers.mainThread())\n"
+            + ".subscribe(" + data + " -> " + loadFinished + "(" + data + "), " + error + " -> {\n"
+            + "throw new IllegalStateException(\"" + loaderCreation.getClassReference().getReferenceName()
+            + " failed to load\", " + error + ");\n"
+            + "}, () -> " + loadFinished + "(null))";
+        if (RxHostSupport.hasLifecycle(host)) {
+            chain = "compositeDisposable.add(" + chain + ")";
+            RxHostSupport.createCompositeDisposable(factory, host);
+            RxHostSupport.generateOrUpdateOnDestroy(host, factory);
+        }
+        initLoader.replace(factory.createExpressionFromText(chain, initLoader));
+
+        // onLoadFinished becomes the completion of the chain, the other callbacks are not needed anymore
+        onLoadFinished.getParameterList().getParameters()[0].delete();
+        AddAnnotationPsiFix.removePhysicalAnnotations(onLoadFinished, "java.lang.Override");
+        PsiUtil.setModifierProperty(onLoadFinished, PsiModifier.PRIVATE, true);
+        onLoadFinished.setName(loadFinished);
+        onCreateLoader.delete();
+        onLoaderReset.delete();
+        if (host.getImplementsList() != null) {
+            for (PsiJavaCodeReferenceElement reference : host.getImplementsList().getReferenceElements()) {
+                if (LOADER_CALLBACKS.equals(reference.getReferenceName())) {
+                    reference.delete();
+                }
+            }
+        }
+        RxHostSupport.addImports(factory, host, RxHostSupport.SINGLE_IMPORT, RxHostSupport.SCHEDULERS_IMPORT,
+            RxHostSupport.ANDROID_SCHEDULERS_IMPORT);
+    }
+
+    private static List<PsiMethodCallExpression> findLoaderCalls(final PsiClass psiClass, final String name) {
+        List<PsiMethodCallExpression> calls = new ArrayList<>();
+        for (PsiMethod method : psiClass.getMethods()) {
+            method.accept(new JavaRecursiveElementWalkingVisitor() {
+                @Override
+                public void visitMethodCallExpression(PsiMethodCallExpression expression) {
+                    super.visitMethodCallExpression(expression);
+                    if (name.equals(expression.getMethodExpression().getReferenceName())) {
+                        calls.add(expression);
+                    }
+                }
+            });
+        }
+        return calls;
+    }
+
+    /**
+     * The class that calls initLoader, when it implements the loader callbacks.
+     */
+    private static PsiClass findHost(final PsiMethodCallExpression initLoader) {
+        PsiMethod method = PsiTreeUtil.getParentOfType(initLoader, PsiMethod.class);
+        PsiClass host = method == null ? null : method.getContainingClass();
+        if (host == null || host.getImplementsList() == null) {
+            return null;
+        }
+        boolean callbacks = Arrays.stream(host.getImplementsList().getReferenceElements())
+            .anyMatch(reference -> LOADER_CALLBACKS.equals(reference.getReferenceName()));
+        return callbacks ? host : null;
+    }
+
+    private static PsiMethod findCallback(final PsiClass host, final String name) {
+        PsiMethod[] methods = host.findMethodsByName(name, false);
+        return methods.length == 1 && methods[0].getBody() != null ? methods[0] : null;
+    }
+
+    /**
+     * The new loader expression when it is the single statement of onCreateLoader.
+     */
+    private static PsiNewExpression loaderCreation(final PsiMethod onCreateLoader) {
+        PsiStatement[] statements = onCreateLoader.getBody().getStatements();
+        if (statements.length != 1 || !(statements[0] instanceof PsiReturnStatement)) {
+            return null;
+        }
+        PsiExpression value = PsiUtil.skipParenthesizedExprDown(((PsiReturnStatement) statements[0])
+            .getReturnValue());
+        return value instanceof PsiNewExpression && ((PsiNewExpression) value).getAnonymousClass() == null
+            ? (PsiNewExpression) value : null;
+    }
+
+    private static boolean extendsAsyncTaskLoader(final PsiClass loaderClass) {
+        if (loaderClass.getExtendsList() == null) {
+            return false;
+        }
+        for (PsiClassType type : loaderClass.getExtendsList().getReferencedTypes()) {
+            if (ASYNC_TASK_LOADER.equals(type.getClassName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The loader may only load its data, a loader that caches or releases it depends on the loader manager.
+     */
+    private static String validateLoaderClass(final PsiClass loaderClass) {
+        if (loaderClass.findMethodsByName("loadInBackground", false).length != 1) {
+            return "the loader does not implement loadInBackground";
+        }
+        for (PsiMethod method : loaderClass.getMethods()) {
+            if (method.isConstructor() || "loadInBackground".equals(method.getName())) {
+                continue;
+            }
+            if (!"onStartLoading".equals(method.getName()) || method.getBody() == null
+                || method.getBody().getStatements().length != 1
+                || !"forceLoad();".equals(method.getBody().getStatements()[0].getText())) {
+                return "the loader overrides " + method.getName();
+            }
+        }
+        return null;
+    }
+}
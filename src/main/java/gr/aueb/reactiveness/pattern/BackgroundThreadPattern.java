@@ -0,0 +1,322 @@
+package gr.aueb.reactiveness.pattern;
+
+import com.intellij.psi.JavaRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiAnonymousClass;
+import com.intellij.psi.PsiAssignmentExpression;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiCodeBlock;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiExpressionStatement;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiJavaCodeReferenceElement;
+import com.intellij.psi.PsiLambdaExpression;
+import com.intellij.psi.PsiLocalVariable;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.PsiMethodReferenceExpression;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiNewExpression;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.PsiReferenceExpression;
+import com.intellij.psi.PsiStatement;
+import com.intellij.psi.PsiThisExpression;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import gr.aueb.reactiveness.refactor.RxHostSupport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@code new Thread(runnable).start()} call that creates a thread for a single piece of work. The work moves to
+ * a Completable on {@code Schedulers.io()}. When the work ends by handing a runnable over to the main thread, the
+ * hand over becomes {@code observeOn(AndroidSchedulers.mainThread())} and the runnable the completion of the
+ * chain. The subscription is added to the compositeDisposable of hosts with a lifecycle, otherwise it is not
+ * disposed, same as the thread.
+ *
+ * @author taggelis
+ */
+public abstract class BackgroundThreadPattern implements LegacyConcurrencyPattern {
+
+    private static final List<String> THREAD_CLASSES = Arrays.asList("java.lang.Thread", "Thread");
+    private static final List<String> MAIN_THREAD_METHODS = Arrays.asList("onCreate", "onStart", "onResume",
+        "onCreateView", "onViewCreated", "onActivityCreated");
+
+    /**
+     * Find if the pattern migrates the threads that end with the main thread hand over.
+     *
+     * @param mainThreadHop the hand over to the main thread that ends the work, null if there is none
+     * @return the boolean
+     */
+    protected abstract boolean claims(PsiMethodCallExpression mainThreadHop);
+
+    @Override
+    public List<PsiElement> detect(final PsiClass psiClass) {
+        List<PsiElement> occurrences = new ArrayList<>();
+        for (PsiMethod method : psiClass.getMethods()) {
+            method.accept(new JavaRecursiveElementWalkingVisitor() {
+                @Override
+                public void visitMethodCallExpression(PsiMethodCallExpression expression) {
+                    super.visitMethodCallExpression(expression);
+                    if (threadCreation(expression) != null && claims(mainThreadHop(expression))) {
+                        occurrences.add(expression);
+                    }
+                }
+            });
+        }
+        return occurrences;
+    }
+
+    @Override
+    public String validate(final PsiElement occurrence) {
+        PsiNewExpression thread = threadCreation((PsiMethodCallExpression) occurrence);
+        if (thread == null || thread.getArgumentList() == null) {
+            return "the thread is not created by the start call";
+        }
+        PsiExpression[] arguments = thread.getArgumentList().getExpressions();
+        PsiAnonymousClass anonymousClass = arguments.length == 1 && arguments[0] instanceof PsiNewExpression
+            ? ((PsiNewExpression) arguments[0]).getAnonymousClass() : thread.getAnonymousClass();
+        if (arguments.length > 1 || (arguments.length == 0 && anonymousClass == null)) {
+            return "the thread is created with a name, a group or a stack size";
+        }
+        if (anonymousClass != null) {
+            if (anonymousClass.getFields().length > 0 || anonymousClass.getInitializers().length > 0
+                || anonymousClass.getMethods().length != 1 || anonymousClass.findMethodsByName("run", false)
+                .length != 1) {
+                return "the runnable of the thread has state or other methods than run";
+            }
+            if (PsiTreeUtil.findChildrenOfType(anonymousClass, PsiThisExpression.class).stream()
+                .anyMatch(thisExpression -> thisExpression.getQualifier() == null)) {
+                return "the runnable of the thread uses this";
+            }
+            if (thread.getAnonymousClass() != null && callsThreadMembers(anonymousClass)) {
+                return "the thread calls the methods of Thread";
+            }
+        }
+        if (thread.getText().contains("Thread.currentThread()")) {
+            return "the thread uses Thread.currentThread()";
+        }
+        return null;
+    }
+
+    @Override
+    public void rewrite(final PsiElementFactory factory, final PsiClass hostClass, final PsiElement occurrence) {
+        PsiMethodCallExpression start = (PsiMethodCallExpression) occurrence;
+        PsiNewExpression thread = threadCreation(start);
+        PsiCodeBlock work = workBody(thread);
+        PsiMethodCallExpression mainThreadHop = mainThreadHop(start);
+        if (mainThreadHop != null && usesLocalsOf(mainThreadHop, work)) {
+            // the hand over needs the values of the work, so it stays inside it
+            mainThreadHop = null;
+        }
+        String chain;
+        if (mainThreadHop == null) {
+            chain = "Completable.fromAction(" + actionText(runnable(thread)) + ")\n"
+                + ".subscribeOn(Schedulers.io())\n"
+                + ".subscribe()";
+        } else {
+            PsiStatement hopStatement = PsiTreeUtil.getParentOfType(mainThreadHop, PsiStatement.class);
+            String background = work.getText().substring(work.getLBrace().getStartOffsetInParent() + 1,
+                hopStatement.getStartOffsetInParent());
+            chain = "Completable.fromAction(() -> {" + background + "})\n"
+                + ".subscribeOn(Schedulers.io())\n"
+                + ".observeOn(AndroidSchedulers.mainThread())\n"
+                + ".subscribe(" + actionText(mainThreadHop.getArgumentList().getExpressions()[0]) + ")";
+            RxHostSupport.addImports(factory, hostClass, RxHostSupport.ANDROID_SCHEDULERS_IMPORT);
+        }
+        if (RxHostSupport.hasLifecycle(hostClass)) {
+            chain = "compositeDisposable.add(" + chain + ")";
+            RxHostSupport.createCompositeDisposable(factory, hostClass);
+            RxHostSupport.generateOrUpdateOnDestroy(hostClass, factory);
+        }
+        start.replace(factory.createExpressionFromText(chain, start));
+        RxHostSupport.addImports(factory, hostClass, RxHostSupport.SINGLE_IMPORT, RxHostSupport.SCHEDULERS_IMPORT);
+    }
+
+    /**
+     * Find if the call hands a runnable over to the main thread with {@code runOnUiThread}.
+     *
+     * @param call the call
+     * @return the boolean
+     */
+    protected static boolean isRunOnUiThread(final PsiMethodCallExpression call) {
+        return "runOnUiThread".equals(call.getMethodExpression().getReferenceName())
+            && call.getArgumentList().getExpressions().length == 1;
+    }
+
+    /**
+     * Find if the call posts a runnable to a Handler of the main looper: a Handler created with
+     * {@code Looper.getMainLooper()}, or without a looper directly inside a lifecycle method of the main thread,
+     * since such a Handler takes the looper of the thread that creates it.
+     *
+     * @param call the call
+     * @return the boolean
+     */
+    protected static boolean isMainHandlerPost(final PsiMethodCallExpression call) {
+        if (!"post".equals(call.getMethodExpression().getReferenceName())
+            || call.getArgumentList().getExpressions().length != 1) {
+            return false;
+        }
+        PsiExpression handler = PsiUtil.skipParenthesizedExprDown(call.getMethodExpression().getQualifierExpression());
+        if (handler instanceof PsiReferenceExpression) {
+            PsiElement target = ((PsiReferenceExpression) handler).resolve();
+            if (target instanceof PsiField) {
+                return isMainHandlerField((PsiField) target);
+            }
+            return target instanceof PsiLocalVariable
+                && isMainHandlerCreation(((PsiLocalVariable) target).getInitializer());
+        }
+        return isMainHandlerCreation(handler);
+    }
+
+    /**
+     * A Handler field that is created with the main looper, or assigned only by the main thread lifecycle methods
+     * of its class.
+     */
+    private static boolean isMainHandlerField(final PsiField field) {
+        if (field.getInitializer() != null) {
+            return isMainHandlerCreation(field.getInitializer());
+        }
+        if (field.getContainingClass() == null || !field.hasModifierProperty(PsiModifier.PRIVATE)) {
+            return false;
+        }
+        List<PsiExpression> values = new ArrayList<>();
+        LocalSearchScope scope = new LocalSearchScope(field.getContainingClass());
+        for (PsiReference reference : ReferencesSearch.search(field, scope)) {
+            PsiElement element = reference.getElement();
+            PsiElement parent = PsiUtil.skipParenthesizedExprUp(element.getParent());
+            if (parent instanceof PsiAssignmentExpression
+                && PsiTreeUtil.isAncestor(((PsiAssignmentExpression) parent).getLExpression(), element, false)) {
+                values.add(((PsiAssignmentExpression) parent).getRExpression());
+            } else if (element instanceof PsiExpression && PsiUtil.isAccessedForWriting((PsiExpression) element)) {
+                return false;
+            }
+        }
+        return !values.isEmpty() && values.stream().allMatch(BackgroundThreadPattern::isMainHandlerCreation);
+    }
+
+    private static boolean isMainHandlerCreation(final PsiExpression expression) {
+        PsiExpression value = PsiUtil.skipParenthesizedExprDown(expression);
+        if (!(value instanceof PsiNewExpression)) {
+            return false;
+        }
+        PsiNewExpression newExpression = (PsiNewExpression) value;
+        PsiJavaCodeReferenceElement reference = newExpression.getClassReference();
+        if (reference == null || !"Handler".equals(reference.getReferenceName())
+            || newExpression.getArgumentList() == null) {
+            return false;
+        }
+        PsiExpression[] arguments = newExpression.getArgumentList().getExpressions();
+        if (arguments.length == 1) {
+            return "Looper.getMainLooper()".equals(arguments[0].getText());
+        }
+        PsiElement scope = PsiTreeUtil.getParentOfType(newExpression, PsiMethod.class, PsiLambdaExpression.class,
+            PsiClass.class);
+        return arguments.length == 0 && scope instanceof PsiMethod
+            && MAIN_THREAD_METHODS.contains(((PsiMethod) scope).getName())
+            && ((PsiMethod) scope).getContainingClass() != null
+            && RxHostSupport.hasLifecycle(((PsiMethod) scope).getContainingClass());
+    }
+
+    /**
+     * The new Thread expression that the start call is called on.
+     */
+    private static PsiNewExpression threadCreation(final PsiMethodCallExpression call) {
+        if (!"start".equals(call.getMethodExpression().getReferenceName())
+            || call.getArgumentList().getExpressions().length != 0) {
+            return null;
+        }
+        PsiExpression qualifier = PsiUtil.skipParenthesizedExprDown(call.getMethodExpression()
+            .getQualifierExpression());
+        if (!(qualifier instanceof PsiNewExpression)) {
+            return null;
+        }
+        PsiJavaCodeReferenceElement reference = ((PsiNewExpression) qualifier).getClassOrAnonymousClassReference();
+        return reference != null && THREAD_CLASSES.contains(reference.getQualifiedName())
+            ? (PsiNewExpression) qualifier : null;
+    }
+
+    /**
+     * The runnable that the thread is created with, or the thread itself when it overrides run.
+     */
+    private static PsiExpression runnable(final PsiNewExpression thread) {
+        PsiExpression[] arguments = Objects.requireNonNull(thread.getArgumentList()).getExpressions();
+        return arguments.length == 1 ? arguments[0] : thread;
+    }
+
+    /**
+     * The code block of the work of the thread, null if the runnable is not a lambda or an anonymous class.
+     */
+    private static PsiCodeBlock workBody(final PsiNewExpression thread) {
+        if (thread == null || thread.getArgumentList() == null) {
+            return null;
+        }
+        PsiExpression runnable = PsiUtil.skipParenthesizedExprDown(runnable(thread));
+        if (runnable instanceof PsiLambdaExpression) {
+            PsiElement body = ((PsiLambdaExpression) runnable).getBody();
+            return body instanceof PsiCodeBlock ? (PsiCodeBlock) body : null;
+        }
+        PsiAnonymousClass anonymousClass = runnable instanceof PsiNewExpression
+            ? ((PsiNewExpression) runnable).getAnonymousClass() : null;
+        PsiMethod[] run = anonymousClass == null ? PsiMethod.EMPTY_ARRAY
+            : anonymousClass.findMethodsByName("run", false);
+        return run.length == 1 ? run[0].getBody() : null;
+    }
+
+    /**
+     * The hand over to the main thread that is the last statement of the work, null if there is none.
+     */
+    private static PsiMethodCallExpression mainThreadHop(final PsiMethodCallExpression start) {
+        PsiCodeBlock work = workBody(threadCreation(start));
+        PsiStatement[] statements = work == null ? PsiStatement.EMPTY_ARRAY : work.getStatements();
+        if (statements.length == 0 || !(statements[statements.length - 1] instanceof PsiExpressionStatement)) {
+            return null;
+        }
+        PsiExpression last = ((PsiExpressionStatement) statements[statements.length - 1]).getExpression();
+        return last instanceof PsiMethodCallExpression
+            && (isRunOnUiThread((PsiMethodCallExpression) last) || isMainHandlerPost((PsiMethodCallExpression) last))
+            ? (PsiMethodCallExpression) last : null;
+    }
+
+    private static boolean usesLocalsOf(final PsiMethodCallExpression mainThreadHop, final PsiCodeBlock work) {
+        return PsiTreeUtil.findChildrenOfType(mainThreadHop, PsiReferenceExpression.class).stream()
+            .map(PsiReferenceExpression::resolve)
+            .anyMatch(target -> target instanceof PsiLocalVariable && PsiTreeUtil.isAncestor(work, target, true)
+                && !PsiTreeUtil.isAncestor(mainThreadHop, target, true));
+    }
+
+    private static boolean callsThreadMembers(final PsiAnonymousClass thread) {
+        return PsiTreeUtil.findChildrenOfType(thread, PsiMethodCallExpression.class).stream()
+            .filter(call -> call.getMethodExpression().getQualifierExpression() == null)
+            .map(PsiMethodCallExpression::resolveMethod)
+            .anyMatch(method -> method != null && method.getContainingClass() != null
+                && THREAD_CLASSES.contains(method.getContainingClass().getQualifiedName()));
+    }
+
+    /**
+     * The text of the Rx Action that runs the runnable, or the run method of an anonymous thread. Lambdas and
+     * method references are compatible with Action as they are.
+     */
+    private static String actionText(final PsiExpression runnable) {
+        PsiExpression expression = PsiUtil.skipParenthesizedExprDown(runnable);
+        if (expression instanceof PsiLambdaExpression || expression instanceof PsiMethodReferenceExpression) {
+            return expression.getText();
+        }
+        PsiAnonymousClass anonymousClass = expression instanceof PsiNewExpression
+            ? ((PsiNewExpression) expression).getAnonymousClass() : null;
+        if (anonymousClass != null && anonymousClass.findMethodsByName("run", false).length == 1
+            && anonymousClass.findMethodsByName("run", false)[0].getBody() != null) {
+            return "() -> " + anonymousClass.findMethodsByName("run", false)[0].getBody().getText();
+        }
+        // only a primary expression can qualify the method reference
+        return expression instanceof PsiReferenceExpression || expression instanceof PsiMethodCallExpression
+            || expression instanceof PsiNewExpression ? expression.getText() + "::run"
+            : "(" + expression.getText() + ")::run";
+    }
+}
@@ -0,0 +1,68 @@
+package gr.aueb.reactiveness.pattern;
+
+import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementFactory;
+
+import java.util.List;
+
+/**
+ * A legacy concurrency pattern that the migration moves onto Rx schedulers, next to AsyncTask. Patterns are
+ * registered on the {@code gr.aueb.reactiveness.legacyConcurrencyPattern} extension point and run over every
+ * class of the migrated files: the detector finds the occurrences, the validator rejects the ones that cannot
+ * be migrated safely and the rewriter migrates the rest.
+ *
+ * @author taggelis
+ */
+public interface LegacyConcurrencyPattern {
+
+    /**
+     * The extension point of the patterns.
+     */
+    ExtensionPointName<LegacyConcurrencyPattern> EP_NAME =
+        ExtensionPointName.create("gr.aueb.reactiveness.legacyConcurrencyPattern");
+
+    /**
+     * Gets the name of the pattern, used by the migration report.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Find the occurrences of the pattern in the class, without its inner classes.
+     *
+     * @param psiClass the psi class
+     * @return the occurrences
+     */
+    List<PsiElement> detect(PsiClass psiClass);
+
+    /**
+     * Validate if an occurrence can be migrated.
+     *
+     * @param occurrence the occurrence
+     * @return why the occurrence cannot be migrated, null if it can
+     */
+    String validate(PsiElement occurrence);
+
+    /**
+     * Find if the migration of a valid occurrence starts its work again on every configuration change, because the
+     * work was kept across configuration changes by the Android framework.
+     *
+     * @param occurrence the occurrence
+     * @return the boolean
+     */
+    default boolean restartsOnConfigurationChange(final PsiElement occurrence) {
+        return false;
+    }
+
+    /**
+     * Migrate a valid occurrence to Rx. Must be called inside a write command.
+     *
+     * @param factory    the factory
+     * @param hostClass  the class that hosts the occurrence
+     * @param occurrence the occurrence
+     */
+    void rewrite(PsiElementFactory factory, PsiClass hostClass, PsiElement occurrence);
+}
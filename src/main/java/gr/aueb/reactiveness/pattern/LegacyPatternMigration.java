@@ -0,0 +1,101 @@
+package gr.aueb.reactiveness.pattern;
+
+import com.intellij.codeInsight.actions.ReformatCodeProcessor;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.util.Pair;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import gr.aueb.reactiveness.report.MigrationPhase;
+import gr.aueb.reactiveness.report.MigrationReport;
+import gr.aueb.reactiveness.utils.ReactivenessUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migrates the legacy concurrency patterns of a file with every registered {@link LegacyConcurrencyPattern}.
+ * The occurrences of the file are detected and validated first and then rewritten in a single write command,
+ * rejected occurrences and occurrences that a configuration change starts again are added to the findings of the
+ * report.
+ *
+ * @author taggelis
+ */
+public class LegacyPatternMigration {
+
+    private final MigrationReport report;
+
+    /**
+     * Instantiates a new Legacy pattern migration that records its phases on the report.
+     *
+     * @param report the migration report
+     */
+    public LegacyPatternMigration(final MigrationReport report) {
+        this.report = report;
+    }
+
+    /**
+     * Migrate the patterns of the class of a file and of its inner classes, except the inner asyncTasks that
+     * are migrated on their own.
+     *
+     * @param factory       the factory
+     * @param javaFileClass the main class of the file
+     */
+    public void migrate(final PsiElementFactory factory, final PsiClass javaFileClass) {
+        List<PsiClass> classes = new ArrayList<>();
+        classes.add(javaFileClass);
+        for (PsiClass innerClass : javaFileClass.getInnerClasses()) {
+            if (!ReactivenessUtils.findIfExtendsAsyncTask(innerClass)) {
+                classes.add(innerClass);
+            }
+        }
+        List<Pair<LegacyConcurrencyPattern, Pair<PsiClass, PsiElement>>> occurrences = new ArrayList<>();
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.PATTERN_SEARCH, javaFileClass)) {
+            for (LegacyConcurrencyPattern pattern : LegacyConcurrencyPattern.EP_NAME.getExtensions()) {
+                for (PsiClass psiClass : classes) {
+                    for (PsiElement occurrence : pattern.detect(psiClass)) {
+                        report.increment(MigrationReport.PATTERNS);
+                        String reason = pattern.validate(occurrence);
+                        if (reason != null) {
+                            report.addFinding(MigrationReport.REJECTED_PATTERN, occurrence,
+                                pattern.getName() + ": " + reason);
+                        } else {
+                            occurrences.add(Pair.create(pattern, Pair.create(psiClass, occurrence)));
+                            if (pattern.restartsOnConfigurationChange(occurrence)) {
+                                report.addFinding(MigrationReport.RESTARTED_TASK, occurrence, pattern.getName()
+                                    + ": the migrated work starts again on every configuration change");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (occurrences.isEmpty()) {
+            return;
+        }
+        new WriteCommandAction.Simple(javaFileClass.getProject(), javaFileClass.getContainingFile()) {
+            @Override
+            protected void run() {
+                try (MigrationReport.Measurement ignored = report
+                    .start(MigrationPhase.PATTERN_REWRITE, javaFileClass)) {
+                    for (Pair<LegacyConcurrencyPattern, Pair<PsiClass, PsiElement>> occurrence : occurrences) {
+                        // a previous rewrite of the file may have replaced the occurrence
+                        if (occurrence.second.second.isValid()) {
+                            occurrence.first.rewrite(factory, occurrence.second.first, occurrence.second.second);
+                            report.increment(MigrationReport.MIGRATED_PATTERNS);
+                        }
+                    }
+                }
+                try (MigrationReport.Measurement ignored = report.start(MigrationPhase.REFORMAT, javaFileClass)) {
+                    new ReformatCodeProcessor(javaFileClass.getContainingFile(), false).run();
+                }
+                try (MigrationReport.Measurement ignored = report
+                    .start(MigrationPhase.OPTIMIZE_IMPORTS, javaFileClass)) {
+                    JavaCodeStyleManager.getInstance(javaFileClass.getProject())
+                        .optimizeImports(javaFileClass.getContainingFile());
+                }
+            }
+        }.execute();
+    }
+}
@@ -0,0 +1,21 @@
+package gr.aueb.reactiveness.pattern;
+
+import com.intellij.psi.PsiMethodCallExpression;
+
+/**
+ * Threads that run their work and hand the result over to the main thread with {@code runOnUiThread}.
+ *
+ * @author taggelis
+ */
+public class RunOnUiThreadPattern extends BackgroundThreadPattern {
+
+    @Override
+    public String getName() {
+        return "runOnUiThread";
+    }
+
+    @Override
+    protected boolean claims(final PsiMethodCallExpression mainThreadHop) {
+        return mainThreadHop != null && isRunOnUiThread(mainThreadHop);
+    }
+}
@@ -0,0 +1,21 @@
+package gr.aueb.reactiveness.pattern;
+
+import com.intellij.psi.PsiMethodCallExpression;
+
+/**
+ * Threads that run their work and optionally post the result to a Handler of the main looper.
+ *
+ * @author taggelis
+ */
+public class ThreadHandlerPattern extends BackgroundThreadPattern {
+
+    @Override
+    public String getName() {
+        return "Thread+Handler";
+    }
+
+    @Override
+    protected boolean claims(final PsiMethodCallExpression mainThreadHop) {
+        return mainThreadHop == null || isMainHandlerPost(mainThreadHop);
+    }
+}
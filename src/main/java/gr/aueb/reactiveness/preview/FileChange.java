@@ -0,0 +1,119 @@
+package gr.aueb.reactiveness.preview;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+
+/**
+ * The text that the preview has computed for a file of the project, either a file that the migration modifies or a
+ * file that it generates. The change is applied only if the file has not changed since the preview was computed.
+ *
+ * @author taggelis
+ */
+public final class FileChange {
+
+    private final PsiFile originalFile;
+    private final long modificationStamp;
+    private final PsiDirectory directory;
+    private final String name;
+    private final String beforeText;
+    private final String afterText;
+
+    private FileChange(final PsiFile originalFile, final long modificationStamp, final PsiDirectory directory,
+                       final String name, final String beforeText, final String afterText) {
+        this.originalFile = originalFile;
+        this.modificationStamp = modificationStamp;
+        this.directory = directory;
+        this.name = name;
+        this.beforeText = beforeText;
+        this.afterText = afterText;
+    }
+
+    /**
+     * Change of an existing file.
+     *
+     * @param originalFile      the file
+     * @param modificationStamp the modification stamp of the file when it was copied
+     * @param afterText         the migrated text
+     * @return the file change
+     */
+    static FileChange modified(final PsiFile originalFile, final long modificationStamp, final String afterText) {
+        return new FileChange(originalFile, modificationStamp, originalFile.getContainingDirectory(),
+            originalFile.getName(), originalFile.getText(), afterText);
+    }
+
+    /**
+     * Change that generates a new file in the directory.
+     *
+     * @param directory the directory
+     * @param name      the file name
+     * @param afterText the generated text
+     * @return the file change
+     */
+    static FileChange created(final PsiDirectory directory, final String name, final String afterText) {
+        return new FileChange(null, 0, directory, name, "", afterText);
+    }
+
+    /**
+     * Gets the file that the change modifies, null if the change generates a new file.
+     *
+     * @return the original file
+     */
+    public PsiFile getOriginalFile() {
+        return originalFile;
+    }
+
+    /**
+     * Gets before text.
+     *
+     * @return the before text
+     */
+    public String getBeforeText() {
+        return beforeText;
+    }
+
+    /**
+     * Gets after text.
+     *
+     * @return the after text
+     */
+    public String getAfterText() {
+        return afterText;
+    }
+
+    /**
+     * Is outdated boolean.
+     *
+     * @return true if the file has changed or has been generated since the preview was computed
+     */
+    boolean isOutdated() {
+        if (originalFile != null) {
+            return !originalFile.isValid() || originalFile.getModificationStamp() != modificationStamp;
+        }
+        return directory == null || !directory.isValid() || directory.findFile(name) != null;
+    }
+
+    /**
+     * Write the after text to the file. Must be called inside a write command.
+     */
+    void apply() {
+        if (originalFile != null) {
+            Document document = PsiDocumentManager.getInstance(originalFile.getProject()).getDocument(originalFile);
+            if (document != null) {
+                document.setText(afterText);
+            }
+        } else if (directory != null) {
+            directory.add(PsiFileFactory.getInstance(directory.getProject())
+                .createFileFromText(name, JavaFileType.INSTANCE, afterText));
+        }
+    }
+
+    @Override
+    public String toString() {
+        String path = directory == null ? "" : directory.getVirtualFile().getPresentableUrl() + "/";
+        return originalFile == null ? path + name + " (new)" : path + name;
+    }
+}
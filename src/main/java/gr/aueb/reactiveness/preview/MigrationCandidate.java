@@ -0,0 +1,98 @@
+package gr.aueb.reactiveness.preview;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiNewExpression;
+import com.intellij.psi.SmartPointerManager;
+import com.intellij.psi.SmartPsiElementPointer;
+
+/**
+ * An AsyncTask that the preview proposes to migrate. The psi elements are kept as smart pointers, as the preview
+ * is computed in the background and computed again every time the user includes or excludes a task.
+ *
+ * @author taggelis
+ */
+public class MigrationCandidate {
+
+    private final SmartPsiElementPointer<PsiClass> parentClass;
+    private final SmartPsiElementPointer<PsiClass> innerAsyncTask;
+    private final SmartPsiElementPointer<PsiNewExpression> anonymousAsyncTask;
+    private final String displayName;
+
+    private MigrationCandidate(final PsiClass parentClass, final PsiClass innerAsyncTask,
+                               final PsiNewExpression anonymousAsyncTask, final String displayName) {
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(parentClass.getProject());
+        this.parentClass = pointerManager.createSmartPsiElementPointer(parentClass);
+        this.innerAsyncTask = innerAsyncTask == null ? null
+            : pointerManager.createSmartPsiElementPointer(innerAsyncTask);
+        this.anonymousAsyncTask = anonymousAsyncTask == null ? null
+            : pointerManager.createSmartPsiElementPointer(anonymousAsyncTask);
+        this.displayName = displayName;
+    }
+
+    /**
+     * Candidate for an inner AsyncTask class.
+     *
+     * @param parentClass    the parent class
+     * @param innerAsyncTask the inner async task
+     * @return the migration candidate
+     */
+    public static MigrationCandidate forInnerClass(final PsiClass parentClass, final PsiClass innerAsyncTask) {
+        return new MigrationCandidate(parentClass, innerAsyncTask, null,
+            parentClass.getName() + "." + innerAsyncTask.getName());
+    }
+
+    /**
+     * Candidate for an anonymous AsyncTask expression.
+     *
+     * @param parentClass        the parent class
+     * @param anonymousAsyncTask the anonymous async task
+     * @param index              the index of the expression inside the parent class
+     * @return the migration candidate
+     */
+    public static MigrationCandidate forAnonymous(final PsiClass parentClass,
+                                                  final PsiNewExpression anonymousAsyncTask, final int index) {
+        return new MigrationCandidate(parentClass, null, anonymousAsyncTask,
+            parentClass.getName() + " (anonymous #" + index + ")");
+    }
+
+    /**
+     * Gets parent class, null if it is no longer valid.
+     *
+     * @return the parent class
+     */
+    public PsiClass getParentClass() {
+        return parentClass.getElement();
+    }
+
+    /**
+     * Gets inner async task, null for anonymous candidates or if it is no longer valid.
+     *
+     * @return the inner async task
+     */
+    public PsiClass getInnerAsyncTask() {
+        return innerAsyncTask == null ? null : innerAsyncTask.getElement();
+    }
+
+    /**
+     * Gets anonymous async task, null for inner candidates or if it is no longer valid.
+     *
+     * @return the anonymous async task
+     */
+    public PsiNewExpression getAnonymousAsyncTask() {
+        return anonymousAsyncTask == null ? null : anonymousAsyncTask.getElement();
+    }
+
+    /**
+     * Is anonymous boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isAnonymous() {
+        return anonymousAsyncTask != null;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,257 @@
+package gr.aueb.reactiveness.preview;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiNewExpression;
+import com.intellij.psi.util.PsiTreeUtil;
+import gr.aueb.reactiveness.refactor.AsyncTaskRefactor;
+import gr.aueb.reactiveness.report.MigrationReport;
+import gr.aueb.reactiveness.settings.ReactivenessSettings;
+import gr.aueb.reactiveness.utils.ReactivenessUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The migration of the chosen AsyncTasks, computed by the refactor on non-physical copies of their files. The
+ * preview shows the texts of the copies and applying it writes exactly these texts to the files, so what the user
+ * reviews is what the project gets.
+ *
+ * @author taggelis
+ */
+public final class MigrationPreview {
+
+    private final List<MigrationCandidate> candidates;
+    private final List<FileChange> changes;
+    private final MigrationReport report;
+
+    private MigrationPreview(final List<MigrationCandidate> candidates, final List<FileChange> changes,
+                             final MigrationReport report) {
+        this.candidates = candidates;
+        this.changes = changes;
+        this.report = report;
+    }
+
+    /**
+     * Compute the preview of all the asyncTasks of the project that can be migrated.
+     *
+     * @param project   the project
+     * @param indicator the progress indicator
+     * @return the migration preview
+     */
+    public static MigrationPreview computeAll(final Project project, final ProgressIndicator indicator) {
+        List<MigrationCandidate> candidates = findCandidates(project, indicator);
+        indicator.setText2(null);
+        indicator.setIndeterminate(true);
+        MigrationPreview preview = compute(project, candidates);
+        // the rejected anonymous tasks have been converted to inner classes, that the preview leaves out
+        if (preview.getCandidates().size() < candidates.size()) {
+            preview = compute(project, preview.getCandidates());
+        }
+        return preview;
+    }
+
+    /**
+     * Find the inner and the anonymous asyncTasks of the project. Every file is searched in its own read action,
+     * so that the IDE stays responsive while a large project is searched in the background.
+     *
+     * @param project   the project
+     * @param indicator the progress indicator
+     * @return the migration candidates
+     */
+    public static List<MigrationCandidate> findCandidates(final Project project, final ProgressIndicator indicator) {
+        DumbService dumbService = DumbService.getInstance(project);
+        Collection<VirtualFile> virtualFiles = dumbService
+            .runReadActionInSmartMode(() -> ReactivenessUtils.findProjectJavaFiles(project));
+        List<MigrationCandidate> candidates = new ArrayList<>();
+        int processed = 0;
+        for (VirtualFile virtualFile : virtualFiles) {
+            indicator.checkCanceled();
+            indicator.setFraction((double) processed++ / virtualFiles.size());
+            indicator.setText2(virtualFile.getPresentableUrl());
+            candidates.addAll(dumbService.runReadActionInSmartMode(() -> findCandidates(project, virtualFile)));
+        }
+        return candidates;
+    }
+
+    private static List<MigrationCandidate> findCandidates(final Project project, final VirtualFile virtualFile) {
+        List<MigrationCandidate> candidates = new ArrayList<>();
+        PsiFile psiFile = virtualFile.isValid() ? PsiManager.getInstance(project).findFile(virtualFile) : null;
+        if (!(psiFile instanceof PsiJavaFile) || ((PsiJavaFile) psiFile).getClasses().length == 0) {
+            return candidates;
+        }
+        PsiClass javaFileClass = ((PsiJavaFile) psiFile).getClasses()[0];
+        int index = 1;
+        for (PsiNewExpression anonymous : ReactivenessUtils.findAnonymousAsyncTaskExpression(javaFileClass)) {
+            candidates.add(MigrationCandidate.forAnonymous(javaFileClass, anonymous, index++));
+        }
+        for (PsiClass javaInnerClass : javaFileClass.getInnerClasses()) {
+            if (ReactivenessUtils.findIfExtendsAsyncTask(javaInnerClass)
+                && ReactivenessUtils.findIfDoInBackgroundExist(javaInnerClass)) {
+                candidates.add(MigrationCandidate.forInnerClass(javaFileClass, javaInnerClass));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Compute the preview of the candidates. The candidates that the validations of the migration reject are
+     * left out of the preview.
+     *
+     * @param project    the project
+     * @param candidates the candidates to migrate
+     * @return the migration preview
+     */
+    public static MigrationPreview compute(final Project project, final List<MigrationCandidate> candidates) {
+        return DumbService.getInstance(project).runReadActionInSmartMode(() -> migrateCopies(project, candidates));
+    }
+
+    private static MigrationPreview migrateCopies(final Project project, final List<MigrationCandidate> candidates) {
+        PreviewFiles files = new PreviewFiles();
+        MigrationReport report = new MigrationReport();
+        AsyncTaskRefactor refactor = new AsyncTaskRefactor(report, files);
+        PsiElementFactory factory = JavaPsiFacade.getElementFactory(project);
+
+        // the elements of the candidates are found in the copies before any of the copies changes
+        Map<PsiClass, List<PsiNewExpression>> anonymousTasks = new LinkedHashMap<>();
+        Map<PsiClass, List<MigrationCandidate>> anonymousCandidates = new LinkedHashMap<>();
+        Map<PsiClass, MigrationCandidate> innerCandidates = new LinkedHashMap<>();
+        for (MigrationCandidate candidate : candidates) {
+            PsiClass parentClass = candidate.getParentClass();
+            PsiNewExpression anonymous = candidate.getAnonymousAsyncTask();
+            PsiClass innerAsyncTask = candidate.getInnerAsyncTask();
+            if (parentClass == null || anonymous == null && innerAsyncTask == null) {
+                continue;
+            }
+            PsiFile copy = files.copyOf(parentClass.getContainingFile());
+            PsiClass parentCopy = PsiTreeUtil.findSameElementInCopy(parentClass, copy);
+            if (anonymous != null) {
+                anonymousTasks.computeIfAbsent(parentCopy, p -> new ArrayList<>())
+                    .add(PsiTreeUtil.findSameElementInCopy(anonymous, copy));
+                anonymousCandidates.computeIfAbsent(parentCopy, p -> new ArrayList<>()).add(candidate);
+            } else {
+                innerCandidates.put(PsiTreeUtil.findSameElementInCopy(innerAsyncTask, copy), candidate);
+            }
+        }
+
+        // the anonymous tasks are converted before the inner classes are searched, as the migration does
+        anonymousTasks.forEach((parentCopy, anonymousList) -> {
+            report.increment(MigrationReport.ANONYMOUS_FILES);
+            List<PsiClass> innerClasses = refactor.convertAnonymousAsyncTasksToInner(factory, parentCopy,
+                anonymousList);
+            for (int i = 0; i < innerClasses.size(); i++) {
+                innerCandidates.put(innerClasses.get(i), anonymousCandidates.get(parentCopy).get(i));
+            }
+        });
+        Map<PsiClass, PsiClass> parentClasses = new LinkedHashMap<>();
+        innerCandidates.keySet().stream()
+            .map(PsiClass::getContainingClass)
+            .distinct()
+            .forEach(parentCopy -> {
+                report.increment(MigrationReport.FILES);
+                for (PsiClass innerClass : parentCopy.getInnerClasses()) {
+                    if (innerCandidates.containsKey(innerClass)) {
+                        parentClasses.put(innerClass, parentCopy);
+                        report.increment(MigrationReport.INNER_TASKS);
+                        report.incrementTasks(innerClass);
+                    }
+                }
+            });
+
+        if (ReactivenessSettings.getInstance().isShareClonedTasks()) {
+            refactor.shareClonedTasks(factory, parentClasses.keySet());
+        }
+        Set<MigrationCandidate> migrated = new HashSet<>();
+        parentClasses.forEach((asyncTask, parentCopy) -> {
+            if (refactor.migrateInnerAsyncTask(factory, parentCopy, asyncTask)) {
+                migrated.add(innerCandidates.get(asyncTask));
+            }
+        });
+        // in the order of the candidates, that the anonymous tasks are named by
+        return new MigrationPreview(candidates.stream().filter(migrated::contains).collect(Collectors.toList()),
+            files.getChanges(), report);
+    }
+
+    /**
+     * Gets the candidates that the preview migrates.
+     *
+     * @return the migrated candidates
+     */
+    public List<MigrationCandidate> getCandidates() {
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * Gets the changes of the files.
+     *
+     * @return the file changes
+     */
+    public List<FileChange> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Gets the report of the migration of the preview.
+     *
+     * @return the migration report
+     */
+    public MigrationReport getReport() {
+        return report;
+    }
+
+    /**
+     * Find the change of a file.
+     *
+     * @param file the file
+     * @return the file change, null if the preview does not change the file
+     */
+    public FileChange findChange(final PsiFile file) {
+        return changes.stream()
+            .filter(change -> file.equals(change.getOriginalFile()))
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Write the texts of the preview to the files in a single write command, so the whole migration is undone in
+     * one step.
+     *
+     * @param project the project
+     * @return false if a file has changed since the preview was computed, in which case nothing is written
+     */
+    public boolean apply(final Project project) {
+        if (changes.stream().anyMatch(FileChange::isOutdated)) {
+            return false;
+        }
+        PsiFile[] files = changes.stream()
+            .map(FileChange::getOriginalFile)
+            .filter(Objects::nonNull)
+            .toArray(PsiFile[]::new);
+        new WriteCommandAction.Simple(project, "Migrate AsyncTask to Rx", files) {
+            @Override
+            protected void run() {
+                changes.forEach(FileChange::apply);
+                PsiDocumentManager.getInstance(project).commitAllDocuments();
+            }
+        }.execute();
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+package gr.aueb.reactiveness.preview;
+
+import com.intellij.diff.DiffContentFactory;
+import com.intellij.diff.DiffManager;
+import com.intellij.diff.DiffRequestPanel;
+import com.intellij.diff.requests.SimpleDiffRequest;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.psi.PsiClass;
+import com.intellij.ui.CheckBoxList;
+import com.intellij.ui.CollectionListModel;
+import com.intellij.ui.JBSplitter;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBScrollPane;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.JComponent;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the computed migration of every AsyncTask and lets the user include or exclude each one of them. The
+ * preview is computed again every time a task is included or excluded, so the files show exactly what is applied.
+ *
+ * @author taggelis
+ */
+public class MigrationPreviewDialog extends DialogWrapper {
+
+    private final Project project;
+    private final List<MigrationCandidate> candidates;
+    private final CheckBoxList<MigrationCandidate> candidateList = new CheckBoxList<>();
+    private final CollectionListModel<FileChange> changeModel = new CollectionListModel<>();
+    private final JBList<FileChange> changeList = new JBList<>(changeModel);
+    private MigrationPreview preview;
+    private DiffRequestPanel diffPanel;
+
+    /**
+     * Instantiates a new Migration preview dialog.
+     *
+     * @param project the project
+     * @param preview the preview of all the tasks that can be migrated
+     */
+    public MigrationPreviewDialog(final Project project, final MigrationPreview preview) {
+        super(project, true);
+        this.project = project;
+        this.candidates = new ArrayList<>(preview.getCandidates());
+        this.preview = preview;
+        setTitle("Migrate AsyncTask to Rx: Preview");
+        setOKButtonText("Apply Selected");
+        init();
+    }
+
+    @Nullable
+    @Override
+    protected JComponent createCenterPanel() {
+        candidates.forEach(candidate -> candidateList.addItem(candidate, candidate.toString(), true));
+        diffPanel = DiffManager.getInstance().createRequestPanel(project, getDisposable(), null);
+        candidateList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showFile(candidateList.getItemAt(candidateList.getSelectedIndex()));
+            }
+        });
+        candidateList.setCheckBoxListListener((index, value) -> recompute());
+        changeList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showDiff(changeList.getSelectedValue());
+            }
+        });
+        changeModel.replaceAll(preview.getChanges());
+        if (!candidates.isEmpty()) {
+            candidateList.setSelectedIndex(0);
+        }
+
+        JBSplitter lists = new JBSplitter(true, 0.6f);
+        lists.setFirstComponent(new JBScrollPane(candidateList));
+        lists.setSecondComponent(new JBScrollPane(changeList));
+        JBSplitter splitter = new JBSplitter(false, 0.3f);
+        splitter.setFirstComponent(lists);
+        splitter.setSecondComponent(diffPanel.getComponent());
+        splitter.setPreferredSize(new Dimension(1000, 600));
+        return splitter;
+    }
+
+    /**
+     * Gets the preview of the tasks that the user has chosen to migrate.
+     *
+     * @return the migration preview
+     */
+    public MigrationPreview getPreview() {
+        return preview;
+    }
+
+    private void recompute() {
+        List<MigrationCandidate> selected = new ArrayList<>();
+        for (MigrationCandidate candidate : candidates) {
+            if (candidateList.isItemSelected(candidate)) {
+                selected.add(candidate);
+            }
+        }
+        preview = ProgressManager.getInstance().runProcessWithProgressSynchronously(
+            () -> MigrationPreview.compute(project, selected), "Computing AsyncTask migration preview", true,
+            project);
+        changeModel.replaceAll(preview.getChanges());
+        showFile(candidateList.getItemAt(candidateList.getSelectedIndex()));
+    }
+
+    private void showFile(final MigrationCandidate candidate) {
+        PsiClass parentClass = candidate == null ? null : candidate.getParentClass();
+        FileChange change = parentClass == null ? null : preview.findChange(parentClass.getContainingFile());
+        if (change == null) {
+            changeList.clearSelection();
+            diffPanel.setRequest(null);
+        } else {
+            changeList.setSelectedValue(change, true);
+        }
+    }
+
+    private void showDiff(final FileChange change) {
+        if (change == null) {
+            return;
+        }
+        DiffContentFactory contentFactory = DiffContentFactory.getInstance();
+        diffPanel.setRequest(new SimpleDiffRequest(change.toString(),
+            contentFactory.create(project, change.getBeforeText(), JavaFileType.INSTANCE),
+            contentFactory.create(project, change.getAfterText(), JavaFileType.INSTANCE),
+            "AsyncTask", "Rx"));
+    }
+}
@@ -0,0 +1,55 @@
+package gr.aueb.reactiveness.preview;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Computes the migration preview in the background and applies the texts of the tasks that the user accepts
+ * in a single write command, so the whole migration is undone in one step.
+ *
+ * @author taggelis
+ */
+public class MigrationPreviewTask extends Task.Backgroundable {
+
+    private MigrationPreview preview;
+
+    /**
+     * Instantiates a new Migration preview task.
+     *
+     * @param project the project
+     */
+    public MigrationPreviewTask(@NotNull final Project project) {
+        super(project, "Computing AsyncTask migration preview", true);
+    }
+
+    @Override
+    public void run(@NotNull final ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+        preview = MigrationPreview.computeAll(myProject, indicator);
+    }
+
+    @Override
+    public void onSuccess() {
+        if (myProject.isDisposed()) {
+            return;
+        }
+        if (preview == null || preview.getCandidates().isEmpty()) {
+            Messages.showInfoMessage(myProject, "No AsyncTask can be migrated.", "Migrate AsyncTask to Rx");
+            return;
+        }
+        MigrationPreviewDialog dialog = new MigrationPreviewDialog(myProject, preview);
+        if (!dialog.showAndGet()) {
+            return;
+        }
+        MigrationPreview accepted = dialog.getPreview();
+        if (!accepted.apply(myProject)) {
+            Messages.showErrorDialog(myProject, "The files have changed since the preview was computed, "
+                + "preview the migration again.", "Migrate AsyncTask to Rx");
+            return;
+        }
+        accepted.getReport().finish(myProject);
+    }
+}
@@ -0,0 +1,75 @@
+package gr.aueb.reactiveness.preview;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiJavaFile;
+import gr.aueb.reactiveness.refactor.MigrationFiles;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The non-physical copies of the files that the preview migrates. The existing files are copied the first time
+ * the migration touches them and the generated files are kept apart from their directory, so the project does not
+ * change until the user applies the preview.
+ *
+ * @author taggelis
+ */
+final class PreviewFiles extends MigrationFiles {
+
+    private final Map<PsiFile, PsiFile> copies = new LinkedHashMap<>();
+    private final Map<PsiFile, Long> stamps = new HashMap<>();
+    private final Map<PsiDirectory, Map<String, PsiJavaFile>> generated = new LinkedHashMap<>();
+
+    /**
+     * Gets the copy of a physical file, that the migration of the preview modifies instead of the file.
+     *
+     * @param original the physical file
+     * @return the copy
+     */
+    PsiFile copyOf(final PsiFile original) {
+        return copies.computeIfAbsent(original, file -> {
+            stamps.put(file, file.getModificationStamp());
+            return (PsiFile) file.copy();
+        });
+    }
+
+    @Override
+    public PsiJavaFile findOrCreate(final PsiFile neighbour, final String fileName, final Supplier<String> text) {
+        PsiDirectory directory = neighbour.getOriginalFile().getContainingDirectory();
+        if (directory == null) {
+            return null;
+        }
+        PsiFile existing = directory.findFile(fileName);
+        if (existing != null) {
+            PsiFile copy = copyOf(existing);
+            return copy instanceof PsiJavaFile ? (PsiJavaFile) copy : null;
+        }
+        return generated.computeIfAbsent(directory, d -> new LinkedHashMap<>()).computeIfAbsent(fileName,
+            name -> (PsiJavaFile) PsiFileFactory.getInstance(directory.getProject())
+                .createFileFromText(name, JavaFileType.INSTANCE, text.get()));
+    }
+
+    /**
+     * Gets the changes of the copies and the generated files.
+     *
+     * @return the file changes
+     */
+    List<FileChange> getChanges() {
+        List<FileChange> changes = new ArrayList<>();
+        copies.forEach((original, copy) -> {
+            if (!original.getText().equals(copy.getText())) {
+                changes.add(FileChange.modified(original, stamps.get(original), copy.getText()));
+            }
+        });
+        generated.forEach((directory, files) -> files.values()
+            .forEach(file -> changes.add(FileChange.created(directory, file.getName(), file.getText()))));
+        return changes;
+    }
+}
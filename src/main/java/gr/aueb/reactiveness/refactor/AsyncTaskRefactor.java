@@ -1,22 +1,29 @@
 package gr.aueb.reactiveness.refactor;
 
-import com.intellij.codeInsight.actions.ReformatCodeProcessor;
 import com.intellij.codeInsight.generation.GenerateMembersUtil;
 import com.intellij.codeInsight.generation.GenerationInfo;
 import com.intellij.codeInsight.generation.PsiGenerationInfo;
 import com.intellij.codeInsight.intention.AddAnnotationPsiFix;
+import com.intellij.diff.comparison.ComparisonManager;
+import com.intellij.diff.comparison.ComparisonPolicy;
+import com.intellij.diff.comparison.DiffTooBigException;
+import com.intellij.diff.fragments.LineFragment;
 import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.DumbProgressIndicator;
 import com.intellij.psi.JavaRecursiveElementWalkingVisitor;
 import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiCodeBlock;
 import com.intellij.psi.PsiDeclarationStatement;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementFactory;
 import com.intellij.psi.PsiErrorElement;
 import com.intellij.psi.PsiExpression;
-import com.intellij.psi.PsiExpressionStatement;
 import com.intellij.psi.PsiField;
-import com.intellij.psi.PsiIfStatement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiJavaCodeReferenceElement;
+import com.intellij.psi.PsiLiteralExpression;
 import com.intellij.psi.PsiLocalVariable;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.PsiMethodCallExpression;
@@ -28,29 +35,39 @@ import com.intellij.psi.PsiReferenceExpression;
 import com.intellij.psi.PsiReferenceList;
 import com.intellij.psi.PsiStatement;
 import com.intellij.psi.PsiType;
-import com.intellij.psi.PsiTypeElement;
+import com.intellij.psi.codeStyle.CodeStyleManager;
 import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
 import com.intellij.psi.impl.source.PsiMethodImpl;
 import com.intellij.psi.impl.source.tree.java.PsiDeclarationStatementImpl;
-import com.intellij.psi.impl.source.tree.java.PsiKeywordImpl;
-import com.intellij.psi.search.searches.ReferencesSearch;
 import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiTypesUtil;
 import com.intellij.psi.util.PsiUtil;
 import gr.aueb.reactiveness.analysis.AnalyseAsyncTask;
+import gr.aueb.reactiveness.analysis.BlockingGet;
+import gr.aueb.reactiveness.analysis.FieldConfinement;
+import gr.aueb.reactiveness.analysis.LifecycleExecution;
+import gr.aueb.reactiveness.analysis.TaskClones;
+import gr.aueb.reactiveness.analysis.TaskConstructor;
+import gr.aueb.reactiveness.report.MigrationPhase;
+import gr.aueb.reactiveness.report.MigrationReport;
+import gr.aueb.reactiveness.settings.ReactivenessSettings;
 import gr.aueb.reactiveness.utils.AsyncTaskInstance;
 import gr.aueb.reactiveness.utils.Commons;
 import gr.aueb.reactiveness.utils.ReactivenessUtils;
-import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * The AsyncTask refactor class.
@@ -59,11 +76,37 @@ import java.util.function.Consumer;
  */
 public class AsyncTaskRefactor {
 
-    private final String COMPOSITE_DISPOSABLE_IMPORT = "io.reactivex.rxjava3.disposables";
-    private final String BEHAVIOR_SUBJECT_IMPORT = "io.reactivex.rxjava3.subjects";
-    private final String ANDROID_SCHEDULERS_IMPORT = "io.reactivex.rxjava3.android.schedulers";
-    private final String SINGLE_IMPORT = "io.reactivex.rxjava3.core";
-    private final String SCHEDULERS_IMPORT = "io.reactivex.rxjava3.schedulers";
+    private final MigrationReport report;
+    private final MigrationFiles files;
+    private final Map<PsiClass, SharedTask> sharedTasks = new HashMap<>();
+
+    /**
+     * Instantiates a new Async task refactor.
+     */
+    public AsyncTaskRefactor() {
+        this(new MigrationReport());
+    }
+
+    /**
+     * Instantiates a new Async task refactor that records its phases on the report.
+     *
+     * @param report the migration report
+     */
+    public AsyncTaskRefactor(final MigrationReport report) {
+        this(report, new MigrationFiles());
+    }
+
+    /**
+     * Instantiates a new Async task refactor that records its phases on the report and generates its helper
+     * files through the given files.
+     *
+     * @param report the migration report
+     * @param files  the files that the migration generates
+     */
+    public AsyncTaskRefactor(final MigrationReport report, final MigrationFiles files) {
+        this.report = report;
+        this.files = files;
+    }
 
     /**
      * Refactor inner asyncTask.
@@ -72,117 +115,365 @@ public class AsyncTaskRefactor {
      * @param innerAsync the inner async
      */
     public void refactorInnerAsyncTask(PsiElementFactory factory, Map<PsiClass, PsiClass> innerAsync) {
+        if (ReactivenessSettings.getInstance().isShareClonedTasks() && !innerAsync.isEmpty()) {
+            new WriteCommandAction.Simple(innerAsync.keySet().iterator().next().getProject()) {
+                @Override
+                protected void run() {
+                    shareClonedTasks(factory, innerAsync.values());
+                }
+            }.execute();
+        }
         for (PsiClass keySet : innerAsync.keySet()) {
             new WriteCommandAction.Simple(keySet.getProject(), keySet.getContainingFile()) {
                 @Override
                 protected void run() throws Throwable {
-                    //-1. validations
-                    if (AnalyseAsyncTask.isInvalidToRefactor(innerAsync.get(keySet))
-                        || (innerAsync.get(keySet).getModifierList() != null
-                        && innerAsync.get(keySet).getModifierList().hasModifierProperty(PsiModifier.STATIC))) {
-                        return;
-                    }
-                    // 0. Create CompositeDisposable to handle subscriptions if not exists
-                    createCompositeDisposable(factory, keySet);
-                    // create AsyncTaskInstance
-                    AsyncTaskInstance instance = new AsyncTaskInstance(innerAsync.get(keySet));
-                    // 1.Move AsyncTask fields to Activity and rename them
-                    // Precondition: Single async-task instance active
-                    moveAsyncTaskFieldsToParentClass(keySet, instance);
-                    // 2. Extract asyncTask implementation to enclosing activity
-                    extractMethods(keySet, instance);
-                    // 3.   Create BehaviourSubject to handle progress updates
-                    //      Change doInBackground() to enclosing activity that executes the task and change
-                    //      Assemble observable pipeline
-                    changeAsyncTaskExecuteToRx(instance.isOnProgressUpdateExist(), instance.isOnPreExecuteExist(),
-                        instance, factory);
-                    // 4. Dispose subscriptions on method onDestroy
-                    generateOrUpdateOnDestroy(keySet, factory);
-                    // 5. Change do in background emmit events on BehaviorSubject
-                    if (instance.isOnProgressUpdateExist()) {
-                        changeDoInBackgroundOnProgressUpdate(keySet, factory, instance.getTaskName());
-                    }
-                    // 6. import rx classes
-                    addNecessaryImports(keySet, factory, instance.isOnProgressUpdateExist());
-                    // 7. finally delete the asyncTask inner class
-                    instance.getClassInstance().delete();
-                    // 8. Reformat Code
-                    new ReformatCodeProcessor(keySet.getContainingFile(), true).run();
-                    JavaCodeStyleManager.getInstance(keySet.getProject()).optimizeImports(keySet.getContainingFile());
+                    migrateInnerAsyncTask(factory, keySet, innerAsync.get(keySet));
                 }
             }.execute();
         }
     }
 
+    /**
+     * Extract the identical doInBackground methods of the asyncTasks once into the SharedTasks helper, so that
+     * the tasks that are migrated afterwards call the helper instead of an extracted copy of their own. Must be
+     * called inside a write command.
+     *
+     * @param factory    the factory
+     * @param asyncTasks the async tasks
+     */
+    public void shareClonedTasks(final PsiElementFactory factory, final Collection<PsiClass> asyncTasks) {
+        List<TaskClones> groups;
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.CLONE_DETECTION)) {
+            groups = TaskClones.detect(asyncTasks.stream()
+                .filter(asyncTask -> !AnalyseAsyncTask.isInvalidToRefactor(asyncTask)
+                    && (asyncTask.getModifierList() == null
+                    || !asyncTask.getModifierList().hasModifierProperty(PsiModifier.STATIC))
+                    && AnalyseAsyncTask.findBlockingGets(asyncTask).stream().noneMatch(BlockingGet::isHotspot))
+                .collect(Collectors.toList()));
+        }
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.PSI_REWRITE)) {
+            for (TaskClones group : groups) {
+                Map<PsiClass, SharedTask> shared = SharedTask.share(factory, group, files);
+                if (!shared.isEmpty()) {
+                    sharedTasks.putAll(shared);
+                    PsiMethod helperMethod = shared.values().iterator().next().getHelperMethod();
+                    report.addSharedGroup(group.getHelperPackage() + "." + SharedTask.HELPER_CLASS + "."
+                        + helperMethod.getName(), group.getTasks());
+                }
+            }
+        }
+    }
+
+    /**
+     * Migrate a single inner asyncTask of the parent class. The caller is responsible for running it inside a
+     * write command, so that several tasks can be applied as one undoable change.
+     *
+     * @param factory     the factory
+     * @param parentClass the parent class
+     * @param asyncTask   the inner asyncTask class
+     * @return true if the task has been migrated, false if it was rejected by the validations
+     */
+    public boolean migrateInnerAsyncTask(PsiElementFactory factory, PsiClass parentClass, PsiClass asyncTask) {
+        //-1. validations
+        boolean invalid;
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.VALIDATION, parentClass)) {
+            invalid = AnalyseAsyncTask.isInvalidToRefactor(asyncTask)
+                || (asyncTask.getModifierList() != null
+                && asyncTask.getModifierList().hasModifierProperty(PsiModifier.STATIC))
+                || reportBlockingGetHotspots(asyncTask);
+        }
+        if (invalid) {
+            report.increment(MigrationReport.REJECTED_TASKS);
+            return false;
+        }
+        PsiFile parentFile = parentClass.getContainingFile();
+        String originalText = parentFile.getText();
+        // create AsyncTaskInstance
+        AsyncTaskInstance instance = new AsyncTaskInstance(asyncTask);
+        TaskConstructor constructor = TaskConstructor.analyse(asyncTask);
+        FieldConfinement confinement = FieldConfinement.analyse(asyncTask, constructor);
+        TaskResultHolder resultHolder;
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.PSI_REWRITE, parentClass)) {
+            // 0. Create CompositeDisposable to handle subscriptions if not exists
+            RxHostSupport.createCompositeDisposable(factory, parentClass);
+            // 1.Pass the constructor state of every execution as arguments of the methods that use it, confine
+            //   the fields of a single thread or hand them over with the result, and move the rest AsyncTask
+            //   fields to Activity
+            // Precondition: Single async-task instance active for the moved fields
+            captureConstructorState(factory, instance, constructor);
+            reportSharedFields(confinement);
+            resultHolder = confineFields(factory, parentClass, instance, confinement);
+            moveAsyncTaskFieldsToParentClass(parentClass, instance, constructor, confinement);
+            // 2. Extract asyncTask implementation to enclosing activity
+            extractMethods(parentClass, instance, sharedTasks.containsKey(asyncTask));
+        }
+        // 3.   Create BehaviourSubject to handle progress updates
+        //      Change doInBackground() to enclosing activity that executes the task and change
+        //      Assemble observable pipeline
+        //      Optionally record the latency of every chain
+        String instrumentationTag = ReactivenessSettings.getInstance().isInstrumentChains()
+            ? RxTaskMetricsGenerator.instrumentationTag(parentClass, instance.getTaskName()) : null;
+        changeAsyncTaskExecuteToRx(instance.isOnProgressUpdateExist(), instance.isOnPreExecuteExist(),
+            instance, factory, instrumentationTag, constructor, resultHolder);
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.PSI_REWRITE, parentClass)) {
+            if (instrumentationTag != null) {
+                RxTaskMetricsGenerator.ensureRuntimeHelper(factory, parentClass, files);
+            }
+            // 4. Dispose subscriptions on method onDestroy
+            RxHostSupport.generateOrUpdateOnDestroy(parentClass, factory);
+            // 5. Change do in background emmit events on BehaviorSubject
+            if (instance.isOnProgressUpdateExist()) {
+                changeDoInBackgroundOnProgressUpdate(parentClass, factory, instance.getTaskName());
+            }
+            // 6. import rx classes
+            addNecessaryImports(parentClass, factory, instance.isOnProgressUpdateExist());
+            // 7. finally delete the asyncTask inner class
+            instance.getClassInstance().delete();
+        }
+        // 8. Reformat the migrated code
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.REFORMAT, parentFile)) {
+            reformatChanges(parentFile, originalText);
+        }
+        try (MigrationReport.Measurement ignored = report.start(MigrationPhase.OPTIMIZE_IMPORTS, parentFile)) {
+            JavaCodeStyleManager.getInstance(parentFile.getProject()).optimizeImports(parentFile);
+        }
+        report.increment(MigrationReport.MIGRATED_TASKS);
+        return true;
+    }
+
+    /**
+     * Report the get() calls of the asyncTask that keep blocking the main thread after the migration.
+     *
+     * @param asyncTask the async task
+     * @return true if there is any hotspot
+     */
+    private boolean reportBlockingGetHotspots(final PsiClass asyncTask) {
+        boolean hotspots = false;
+        for (BlockingGet blockingGet : AnalyseAsyncTask.findBlockingGets(asyncTask)) {
+            if (blockingGet.isHotspot()) {
+                report.addFinding(MigrationReport.BLOCKING_GET, blockingGet.getGetCall(),
+                    blockingGet.getHotspotReason());
+                hotspots = true;
+            }
+        }
+        return hotspots;
+    }
+
+    /**
+     * Report the fields of the asyncTask that the executions of the migrated task share across threads.
+     *
+     * @param confinement the field confinement of the task
+     */
+    private void reportSharedFields(final FieldConfinement confinement) {
+        confinement.getUnsafeReasons().forEach((field, reason) -> report.addFinding(MigrationReport.SHARED_FIELD,
+            field, field.getName() + " is shared by the executions of the task, " + reason));
+    }
+
     public void refactorAnonymousAsyncTaskToInner(PsiElementFactory factory, PsiClass clazz) {
         new WriteCommandAction.Simple(clazz.getProject(), clazz.getContainingFile()) {
             @Override
             protected void run() {
                 //0. Search for the anonymousAsyncTask expression.
                 List<PsiNewExpression> anonymousList = ReactivenessUtils.findAnonymousAsyncTaskExpression(clazz);
-                int i = 1;
-                for (PsiNewExpression newAsyncTaskExpression : anonymousList) {
-                    String className = "Async" + i;
-                    PsiClass innerAsyncClass = factory.createClassFromText(newAsyncTaskExpression.getText(), null);
-                    innerAsyncClass.setName(className);
-                    PsiErrorElement errorElement = (PsiErrorElement) innerAsyncClass.getLBrace().getNextSibling()
-                        .getNextSibling();
-
-                    PsiReferenceList targetReferenceList = innerAsyncClass.getExtendsList();
-                    PsiJavaCodeReferenceElement type = factory
-                        .createReferenceFromText(errorElement.getChildren()[2].getText(), null);
-                    assert targetReferenceList != null;
-                    targetReferenceList.add(type);
-                    errorElement.delete();
-                    //delete the addition left and right brace
-                    innerAsyncClass.getLBrace().delete();
-                    innerAsyncClass.getRBrace().delete();
-
-                    GenerateMembersUtil
-                        .insertMembersAtOffset(clazz, clazz.getTextOffset(),
-                            Collections.<GenerationInfo>singletonList(
-                                new PsiGenerationInfo<>(innerAsyncClass)));
-
-                    if (newAsyncTaskExpression.getParent() instanceof PsiLocalVariable) {
-                        PsiExpression newExpression = factory
-                            .createExpressionFromText("new " + className + "()", null);
-                        ((PsiLocalVariable) newAsyncTaskExpression.getParent()).setInitializer(newExpression);
-                    } else if (newAsyncTaskExpression.getParent() instanceof PsiReferenceExpression) {
-                        PsiExpression newExpression = factory
-                            .createExpressionFromText("new " + className + "()", null);
-                        newAsyncTaskExpression.replace(newExpression);
-                    }
-                    i += 1;
-                }
-                new ReformatCodeProcessor(clazz.getContainingFile(), false).run();
+                convertAnonymousAsyncTasksToInner(factory, clazz, anonymousList);
             }
         }.execute();
     }
 
+    /**
+     * Convert the given anonymous asyncTask expressions of the class to inner classes. Must be called inside a
+     * write command.
+     *
+     * @param factory       the factory
+     * @param clazz         the class that contains the anonymous asyncTasks
+     * @param anonymousList the anonymous asyncTask expressions
+     * @return the generated inner classes
+     */
+    public List<PsiClass> convertAnonymousAsyncTasksToInner(PsiElementFactory factory, PsiClass clazz,
+                                                            List<PsiNewExpression> anonymousList) {
+        List<PsiClass> innerClasses = new ArrayList<>();
+        String originalText = clazz.getContainingFile().getText();
+        int i = 1;
+        for (PsiNewExpression newAsyncTaskExpression : anonymousList) {
+            // previous runs may have already generated inner classes with the same name
+            while (clazz.findInnerClassByName("Async" + i, false) != null) {
+                i += 1;
+            }
+            String className = "Async" + i;
+            PsiClass innerAsyncClass = createInnerClass(factory, newAsyncTaskExpression, className);
+
+            List<PsiGenerationInfo<PsiClass>> inserted = GenerateMembersUtil
+                .insertMembersAtOffset(clazz, clazz.getTextOffset(),
+                    Collections.singletonList(new PsiGenerationInfo<>(innerAsyncClass)));
+            inserted.forEach(info -> innerClasses.add(info.getPsiMember()));
+
+            if (newAsyncTaskExpression.getParent() instanceof PsiLocalVariable) {
+                PsiExpression newExpression = factory
+                    .createExpressionFromText("new " + className + "()", null);
+                ((PsiLocalVariable) newAsyncTaskExpression.getParent()).setInitializer(newExpression);
+            } else if (newAsyncTaskExpression.getParent() instanceof PsiReferenceExpression) {
+                PsiExpression newExpression = factory
+                    .createExpressionFromText("new " + className + "()", null);
+                newAsyncTaskExpression.replace(newExpression);
+            }
+            i += 1;
+        }
+        if (!innerClasses.isEmpty()) {
+            reformatChanges(clazz.getContainingFile(), originalText);
+        }
+        return innerClasses;
+    }
 
-    private void createCompositeDisposable(PsiElementFactory factory, PsiClass psiClass) {
-        if (!ReactivenessUtils.searchIfCompositeDisposableExists(psiClass)) {
-            ReactivenessUtils.addImport(factory, COMPOSITE_DISPOSABLE_IMPORT, psiClass);
-            PsiField compositeDisposableField = factory
-                .createFieldFromText(
-                    "private static final CompositeDisposable compositeDisposable = new CompositeDisposable();",
-                    psiClass);
-            PsiField[] allFields = psiClass.getFields();
-            int position;
-            if(allFields.length > 0){
-                position = allFields[0].getTextOffset();
-            } else {
-                position =  psiClass.getLBrace().getTextOffset();
+    /**
+     * Reformat the lines of the file that differ from its original text, so that the rest of the file keeps
+     * the format of its authors. The whole file is reformatted if it is too large to compare.
+     *
+     * @param file         the file
+     * @param originalText the text of the file before the change
+     */
+    public static void reformatChanges(final PsiFile file, final CharSequence originalText) {
+        if (file.isPhysical()) {
+            PsiDocumentManager documentManager = PsiDocumentManager.getInstance(file.getProject());
+            Document document = documentManager.getDocument(file);
+            if (document != null) {
+                documentManager.doPostponedOperationsAndUnblockDocument(document);
             }
-            GenerateMembersUtil
-                .insertMembersAtOffset(psiClass, position,
-                    Collections.<GenerationInfo>singletonList(
-                        new PsiGenerationInfo<>(compositeDisposableField)));
         }
+        CodeStyleManager codeStyleManager = CodeStyleManager.getInstance(file.getProject());
+        List<LineFragment> fragments;
+        try {
+            fragments = ComparisonManager.getInstance().compareLines(originalText, file.getText(),
+                ComparisonPolicy.DEFAULT, DumbProgressIndicator.INSTANCE);
+        } catch (DiffTooBigException e) {
+            codeStyleManager.reformat(file);
+            return;
+        }
+        // from the end of the file, so that the offsets of the fragments before stay valid
+        for (int i = fragments.size() - 1; i >= 0; i--) {
+            LineFragment fragment = fragments.get(i);
+            if (fragment.getEndOffset2() > fragment.getStartOffset2()) {
+                codeStyleManager.reformatRange(file, fragment.getStartOffset2(), fragment.getEndOffset2());
+            }
+        }
+    }
+
+    /**
+     * Create the inner class that an anonymous asyncTask expression is converted to, without adding it to a class.
+     *
+     * @param factory   the factory
+     * @param anonymous the anonymous async task expression
+     * @param className the name of the inner class
+     * @return the inner class
+     */
+    private static PsiClass createInnerClass(final PsiElementFactory factory, final PsiNewExpression anonymous,
+                                             final String className) {
+        PsiClass innerAsyncClass = factory.createClassFromText(anonymous.getText(), null);
+        innerAsyncClass.setName(className);
+        PsiErrorElement errorElement = (PsiErrorElement) innerAsyncClass.getLBrace().getNextSibling()
+            .getNextSibling();
+
+        PsiReferenceList targetReferenceList = innerAsyncClass.getExtendsList();
+        PsiJavaCodeReferenceElement type = factory
+            .createReferenceFromText(errorElement.getChildren()[2].getText(), null);
+        assert targetReferenceList != null;
+        targetReferenceList.add(type);
+        errorElement.delete();
+        //delete the addition left and right brace
+        innerAsyncClass.getLBrace().delete();
+        innerAsyncClass.getRBrace().delete();
+        return innerAsyncClass;
     }
 
-    private void moveAsyncTaskFieldsToParentClass(PsiClass psiParentClass, AsyncTaskInstance asyncTaskInstance) {
+    /**
+     * Add the captured fields that every method of the task uses as its leading parameters. The references of
+     * the method resolve to the parameters, since the validations reject the tasks that shadow them.
+     */
+    private void captureConstructorState(final PsiElementFactory factory, final AsyncTaskInstance asyncTaskInstance,
+                                         final TaskConstructor constructor) {
+        for (PsiMethod psiMethod : asyncTaskInstance.getAllMethods()) {
+            List<PsiField> fields = constructor.getCapturedFields(psiMethod.getName());
+            for (PsiField field : fields) {
+                unqualifyReferences(factory, field, psiMethod);
+            }
+            PsiParameter anchor = psiMethod.getParameterList().getParameter(0);
+            for (PsiField field : fields) {
+                PsiParameter parameter = factory.createParameter(field.getName(), field.getType());
+                if (anchor == null) {
+                    psiMethod.getParameterList().add(parameter);
+                } else {
+                    psiMethod.getParameterList().addBefore(parameter, anchor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn the fields that only doInBackground accesses, or that it hands over to onPostExecute, to local
+     * variables of doInBackground, with the initial value of the field. The handed over fields are returned
+     * along with the result through a generated holder class.
+     *
+     * @return the result holder, null if the task hands over no fields
+     */
+    private TaskResultHolder confineFields(final PsiElementFactory factory, final PsiClass parentClass,
+                                           final AsyncTaskInstance asyncTaskInstance,
+                                           final FieldConfinement confinement) {
+        PsiMethod doInBackground = findTaskMethod(asyncTaskInstance, Commons.DO_IN_BACKGROUND);
+        PsiMethod onPostExecute = findTaskMethod(asyncTaskInstance, "onPostExecute");
+        List<PsiField> handedOver = confinement.getFields(FieldConfinement.Confinement.HANDED_OVER);
+        if (doInBackground == null || doInBackground.getBody() == null) {
+            return null;
+        }
+        PsiElement anchor = doInBackground.getBody().getLBrace();
+        for (PsiField field : asyncTaskInstance.getAllFields()) {
+            if (!confinement.isConfined(field)) {
+                continue;
+            }
+            unqualifyReferences(factory, field, doInBackground);
+            if (onPostExecute != null) {
+                unqualifyReferences(factory, field, onPostExecute);
+            }
+            PsiExpression initializer = field.getInitializer() != null ? field.getInitializer()
+                : factory.createExpressionFromText(PsiTypesUtil.getDefaultValueOfType(field.getType()), field);
+            PsiDeclarationStatement declaration = factory
+                .createVariableDeclarationStatement(field.getName(), field.getType(), initializer, doInBackground);
+            anchor = doInBackground.getBody().addAfter(declaration, anchor);
+        }
+        if (handedOver.isEmpty() || onPostExecute == null) {
+            return null;
+        }
+        TaskResultHolder resultHolder = TaskResultHolder.create(parentClass, asyncTaskInstance, handedOver,
+            doInBackground);
+        resultHolder.generate(factory, parentClass, asyncTaskInstance, doInBackground, onPostExecute);
+        return resultHolder;
+    }
+
+    private static PsiMethod findTaskMethod(final AsyncTaskInstance asyncTaskInstance, final String name) {
+        return Arrays.stream(asyncTaskInstance.getAllMethods())
+            .filter(psiMethod -> name.equals(psiMethod.getName()))
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Replace the {@code this.field} references of the method with the plain name, that the local variable or
+     * the parameter of the same name resolves.
+     */
+    private static void unqualifyReferences(final PsiElementFactory factory, final PsiField field,
+                                            final PsiMethod psiMethod) {
+        for (PsiReference reference : ReferencesSearch.search(field, new LocalSearchScope(psiMethod))) {
+            if (reference.getElement() instanceof PsiReferenceExpression
+                && ((PsiReferenceExpression) reference.getElement()).getQualifierExpression() != null) {
+                reference.getElement().replace(factory.createExpressionFromText(field.getName(), psiMethod));
+            }
+        }
+    }
+
+    private void moveAsyncTaskFieldsToParentClass(PsiClass psiParentClass, AsyncTaskInstance asyncTaskInstance,
+                                                  TaskConstructor constructor, FieldConfinement confinement) {
         for (PsiField psiField : asyncTaskInstance.getAllFields()) {
+            if (constructor.isCaptured(psiField) || confinement.isConfined(psiField)) {
+                continue;
+            }
             PsiUtil.setModifierProperty(psiField, PsiModifier.PRIVATE, true);
             GenerateMembersUtil
                 .insertMembersAtOffset(psiParentClass, asyncTaskInstance.getTextOffset() - 1,
@@ -191,30 +482,43 @@ public class AsyncTaskRefactor {
         }
     }
 
-    private void extractMethods(PsiClass psiParentClass, AsyncTaskInstance asyncTaskClass) {
+    private void extractMethods(PsiClass psiParentClass, AsyncTaskInstance asyncTaskClass, boolean shared) {
         PsiMethod[] asyncMethods = asyncTaskClass.getAllMethods();
         for (PsiMethod psiMethod : asyncMethods) {
+            // the shared background work is called from the helper
+            if (psiMethod.isConstructor() || shared && Commons.DO_IN_BACKGROUND.equals(psiMethod.getName())) {
+                continue;
+            }
             //change visibility from protected to private
             PsiUtil.setModifierProperty(psiMethod, PsiModifier.PRIVATE, true);
             //remove override annotation
             AddAnnotationPsiFix.removePhysicalAnnotations(psiMethod, "java.lang.Override");
             //change the methodName to camelCase with rx prefix
-            if (Commons.DO_IN_BACKGROUND.equals(psiMethod.getName())) {
-                char[] taskName = asyncTaskClass.getTaskName().toCharArray();
-                taskName[0] = Character.toUpperCase(taskName[0]);
-                psiMethod.setName("do" + new String(taskName));
-            } else if (Commons.ASYNC_TASK_METHODS.contains(psiMethod.getName())) {
-                psiMethod.setName(asyncTaskClass.getTaskName() + psiMethod.getName().substring(2));
-            } else {
-                char[] methodName = psiMethod.getName().toCharArray();
-                psiMethod.setName(new String(methodName));
-            }
+            psiMethod.setName(extractedMethodName(asyncTaskClass, psiMethod.getName()));
             GenerateMembersUtil
                 .insertMembersAtOffset(psiParentClass, psiParentClass.getTextOffset(),
                     Collections.<GenerationInfo>singletonList(new PsiGenerationInfo<>(psiMethod)));
         }
     }
 
+    /**
+     * The name that a method of the asyncTask takes when it is extracted to the enclosing class.
+     *
+     * @param asyncTaskClass the async task class
+     * @param methodName     the method name inside the asyncTask
+     * @return the extracted method name
+     */
+    public static String extractedMethodName(final AsyncTaskInstance asyncTaskClass, final String methodName) {
+        if (Commons.DO_IN_BACKGROUND.equals(methodName)) {
+            char[] taskName = asyncTaskClass.getTaskName().toCharArray();
+            taskName[0] = Character.toUpperCase(taskName[0]);
+            return "do" + new String(taskName);
+        } else if (Commons.ASYNC_TASK_METHODS.contains(methodName)) {
+            return asyncTaskClass.getTaskName() + methodName.substring(2);
+        }
+        return methodName;
+    }
+
     private void initializeBehaviorSubject(final PsiMethodImpl psiMethod, final PsiElementFactory factory,
                                            final String taskName) {
         PsiType behaviorType = factory.createTypeFromText("BehaviorSubject<String>", psiMethod);
@@ -243,52 +547,11 @@ public class AsyncTaskRefactor {
     private void addNecessaryImports(final PsiClass psiParentClass, final PsiElementFactory factory,
                                      final boolean onProgressUpdateExist) {
         if (onProgressUpdateExist) {
-            ReactivenessUtils.addImport(factory, BEHAVIOR_SUBJECT_IMPORT, psiParentClass);
-        }
-        ReactivenessUtils.addImport(factory, ANDROID_SCHEDULERS_IMPORT, psiParentClass);
-        ReactivenessUtils.addImport(factory, SINGLE_IMPORT, psiParentClass);
-        ReactivenessUtils.addImport(factory, SCHEDULERS_IMPORT, psiParentClass);
-    }
-
-    private void generateOrUpdateOnDestroy(PsiClass psiClass, final PsiElementFactory factory) {
-        Optional<PsiMethod> onDestroy = Arrays.stream(psiClass.getMethods())
-            .filter(psiMethod -> psiMethod.getName().equals("onDestroy"))
-            .findFirst();
-        // method onDestroy exist then update it with disposable.dispose() else create it(only for Activities).
-        if (onDestroy.isPresent()) {
-            PsiIfStatement ifStatement = (PsiIfStatement) factory
-                .createStatementFromText("if(a){\ncompositeDisposable.dispose();\n}", null);
-
-            PsiExpression condition = ifStatement.getCondition();
-            PsiExpression expr = factory
-                .createExpressionFromText("compositeDisposable != null && !compositeDisposable.isDisposed()",
-                    onDestroy.get());
-            if (condition != null) {
-                condition.replace(expr);
-            }
-            onDestroy.get()
-                .addBefore(ifStatement, Objects.requireNonNull(onDestroy.get().getBody()).getLastBodyElement());
-        } else if (ReactivenessUtils.findIfExtendsActivity(psiClass)) {
-            PsiType voidKey = factory.createTypeFromText(PsiKeywordImpl.VOID, psiClass);
-            PsiMethod onDestroyMethod = factory.createMethod("onDestroy", voidKey);
-            onDestroyMethod.getModifierList().addAnnotation("Override");
-
-            PsiStatement superStatement = factory.createStatementFromText("super.onDestroy();", onDestroyMethod);
-            PsiIfStatement ifStatement = (PsiIfStatement) factory
-                .createStatementFromText("if(a){\ncompositeDisposable.dispose();\n}", null);
-
-            PsiExpression condition = ifStatement.getCondition();
-            PsiExpression expr = factory
-                .createExpressionFromText("compositeDisposable != null && !compositeDisposable.isDisposed()",
-                    onDestroyMethod);
-            if (condition != null) {
-                condition.replace(expr);
-            }
-            PsiUtil.setModifierProperty(onDestroyMethod, PsiModifier.PROTECTED, true);
-            PsiElement superElement = onDestroyMethod.getBody().add(superStatement);
-            onDestroyMethod.getBody().addAfter(ifStatement, superElement);
-            psiClass.add(onDestroyMethod);
+            ReactivenessUtils.addImport(factory, RxHostSupport.BEHAVIOR_SUBJECT_IMPORT, psiParentClass);
         }
+        ReactivenessUtils.addImport(factory, RxHostSupport.ANDROID_SCHEDULERS_IMPORT, psiParentClass);
+        ReactivenessUtils.addImport(factory, RxHostSupport.SINGLE_IMPORT, psiParentClass);
+        ReactivenessUtils.addImport(factory, RxHostSupport.SCHEDULERS_IMPORT, psiParentClass);
     }
 
     private void changeDoInBackgroundOnProgressUpdate(PsiClass psiClass, final PsiElementFactory factory,
@@ -323,104 +586,194 @@ public class AsyncTaskRefactor {
     }
 
     private void changeAsyncTaskExecuteToRx(final boolean onProgressUpdateExist, final boolean onPreExecuteExist,
-                                            final AsyncTaskInstance innerAsync, final PsiElementFactory factory) {
-        List<PsiReference> executeReference = new ArrayList<>();
+                                            final AsyncTaskInstance innerAsync, final PsiElementFactory factory,
+                                            final String instrumentationTag, final TaskConstructor constructor,
+                                            final TaskResultHolder resultHolder) {
         List<PsiLocalVariable> localVariables = new ArrayList<>();
-        List<PsiMethodCallExpression> executeDirectCalls = new ArrayList<>();
-        ReferencesSearch.search(innerAsync.getClassInstance()).forEach(reference -> {
-            //reference is finding the declaration two times so we will keep only the new Expression
-            if (reference.getElement().getParent() instanceof PsiTypeElement) {
-                return;
-            }
-            if (reference.getElement().getParent().getParent() instanceof PsiLocalVariable) {
-                ReferencesSearch.search(reference.getElement().getParent().getParent())
-                    .forEach((Consumer<PsiReference>) executeReference::add);
-                localVariables.add((PsiLocalVariable) reference.getElement().getParent().getParent());
-            } else if (reference.getElement().getParent().getParent().getParent() instanceof PsiMethodCallExpression) {
-                executeDirectCalls.add(
-                    (PsiMethodCallExpression) reference.getElement().getParent().getParent().getParent());
-            }
-            // collect all parent methods of the reference
-            List<PsiMethodImpl> methodList = PsiTreeUtil
-                .collectParents(reference.getElement(), PsiMethodImpl.class, false,
-                    e -> e instanceof PsiClass);
+        List<PsiMethodCallExpression> executeCalls;
+        try (MigrationReport.Measurement ignored = report
+            .start(MigrationPhase.REFERENCE_SEARCH, innerAsync.getClassInstance())) {
+            executeCalls = AnalyseAsyncTask.findExecuteCalls(innerAsync.getClassInstance(), localVariables);
+        }
+        try (MigrationReport.Measurement ignored = report
+            .start(MigrationPhase.PSI_REWRITE, innerAsync.getClassInstance())) {
+            rewriteExecuteCalls(onProgressUpdateExist, onPreExecuteExist, innerAsync, factory, executeCalls,
+                instrumentationTag, constructor, resultHolder);
+        }
+        localVariables.forEach(PsiLocalVariable::delete);
+    }
 
-            methodList.forEach(psiMethod -> {
-                if (onProgressUpdateExist) {
-                    initializeBehaviorSubject(psiMethod, factory, innerAsync.getTaskName());
-                }
-            });
-        });
+    private void rewriteExecuteCalls(final boolean onProgressUpdateExist, final boolean onPreExecuteExist,
+                                     final AsyncTaskInstance innerAsync, final PsiElementFactory factory,
+                                     final List<PsiMethodCallExpression> executeCalls,
+                                     final String instrumentationTag, final TaskConstructor constructor,
+                                     final TaskResultHolder resultHolder) {
+        if (onProgressUpdateExist) {
+            // one progress subject for every method that executes the task
+            executeCalls.stream()
+                .map(executeCall -> PsiTreeUtil.getParentOfType(executeCall, PsiMethodImpl.class))
+                .filter(Objects::nonNull)
+                .distinct()
+                .forEach(psiMethod -> initializeBehaviorSubject(psiMethod, factory, innerAsync.getTaskName()));
+        }
         AtomicInteger num = new AtomicInteger(1);
-        executeReference.forEach(executeCalls -> {
-            PsiMethodCallExpression methodCallExpression = (PsiMethodCallExpression) PsiTreeUtil
-                .findFirstParent(executeCalls.getElement(), false, e -> e instanceof PsiMethodCallExpression);
+        executeCalls.forEach(executeCall -> {
             List<PsiMethodImpl> methods = PsiTreeUtil
-                .collectParents(executeCalls.getElement(), PsiMethodImpl.class, false,
+                .collectParents(executeCall, PsiMethodImpl.class, false,
                     e -> e instanceof PsiClass);
-            if (onPreExecuteExist) {
-                addOnPreExecute(factory, executeCalls, methods.get(0), innerAsync.getTaskName());
+            String disposalName = "d" + num.addAndGet(1);
+            Map<PsiField, String> capturedValues = declareCapturedValues(factory, executeCall, constructor,
+                disposalName);
+            RxChainTemplate template = new RxChainTemplate(innerAsync.getTaskName(), disposalName);
+            String preExecute = innerAsync.getTaskName() + "PreExecute("
+                + capturedArguments(constructor, "onPreExecute", capturedValues) + ")";
+            retainLifecycleStart(factory, executeCall, innerAsync, onProgressUpdateExist, template,
+                onPreExecuteExist ? preExecute : null);
+            if (onPreExecuteExist && !template.isRetained()) {
+                addOnPreExecute(factory, executeCall, methods.get(0), preExecute);
             }
-            generateRxCode(factory, methodCallExpression, methods.get(0), onProgressUpdateExist,
-                innerAsync.getTaskName(), num.addAndGet(1));
-
+            template.setBackgroundCaptures(capturedArguments(constructor, Commons.DO_IN_BACKGROUND, capturedValues));
+            template.setPostExecuteCaptures(capturedArguments(constructor, "onPostExecute", capturedValues));
+            if (resultHolder != null) {
+                resultHolder.configure(template);
+            }
+            if (sharedTasks.containsKey(innerAsync.getClassInstance())) {
+                sharedTasks.get(innerAsync.getClassInstance()).configure(
+                    innerAsync.getClassInstance().getContainingClass(), template);
+            }
+            generateRxCode(factory, executeCall, methods.get(0), onProgressUpdateExist, template,
+                template.isRetained() ? null : instrumentationTag);
         });
-        localVariables.forEach(PsiLocalVariable::delete);
+    }
 
-        // For new AsyncTask().execute()
-        executeDirectCalls.forEach(directCalls -> {
-            List<PsiMethodImpl> methods = PsiTreeUtil
-                .collectParents(directCalls, PsiMethodImpl.class, false,
-                    e -> e instanceof PsiClass);
-            if (onPreExecuteExist) {
-                addOnPreExecute(factory, directCalls.getChildren()[0].getReference(), methods.get(0),
-                    innerAsync.getTaskName());
+    /**
+     * Cache the chain of an execution that starts from a lifecycle entry point of the Activity in its ViewModel,
+     * when enabled by the settings. The background method becomes static, so that the cached chain does not hold
+     * the Activity after a configuration change. The executions are reported, since the retained ones run once
+     * for the Activity and its recreations.
+     */
+    private void retainLifecycleStart(final PsiElementFactory factory, final PsiMethodCallExpression executeCall,
+                                      final AsyncTaskInstance innerAsync, final boolean onProgressUpdateExist,
+                                      final RxChainTemplate template, final String preExecute) {
+        if (!ReactivenessSettings.getInstance().isRetainLifecycleTasks()
+            || !LifecycleExecution.isLifecycleStart(executeCall)) {
+            return;
+        }
+        PsiClass parentClass = innerAsync.getClassInstance().getContainingClass();
+        SharedTask sharedTask = sharedTasks.get(innerAsync.getClassInstance());
+        PsiMethod[] backgroundMethods = sharedTask != null ? new PsiMethod[]{sharedTask.getHelperMethod()}
+            : parentClass == null ? PsiMethod.EMPTY_ARRAY : parentClass
+            .findMethodsByName(extractedMethodName(innerAsync, Commons.DO_IN_BACKGROUND), false);
+        String reason = backgroundMethods.length != 1
+            || PsiTreeUtil.getParentOfType(executeCall, PsiClass.class) != parentClass
+            ? "the task is executed outside its parent class"
+            : LifecycleExecution.analyse(executeCall, backgroundMethods[0], onProgressUpdateExist);
+        if (reason != null) {
+            report.addFinding(MigrationReport.RESTARTED_TASK, executeCall, reason);
+            return;
+        }
+        report.addFinding(MigrationReport.RETAINED_TASK, executeCall, "the task runs once for the Activity and the "
+            + "instances that configuration changes create, which receive its result");
+        PsiMethod backgroundMethod = backgroundMethods[0];
+        PsiUtil.setModifierProperty(backgroundMethod, PsiModifier.STATIC, true);
+        template.setRetained(RxHostSupport.RETAINED_TASKS_CLASS, preExecute);
+        RxHostSupport.createRetainedTasks(factory, parentClass, template.getCacheField(), sharedTask != null
+            ? sharedTask.getResultType() : Objects.requireNonNull(backgroundMethod.getReturnTypeElement()).getText());
+    }
+
+    /**
+     * Evaluate the constructor arguments of the execution once, where the task is created, so that the statements
+     * between the creation and the execute call do not change them. Literals are passed as they are, any other
+     * argument is held by a final local variable that the lambdas of the chain capture.
+     *
+     * @return the value of every captured field
+     */
+    private Map<PsiField, String> declareCapturedValues(final PsiElementFactory factory,
+                                                        final PsiMethodCallExpression executeCall,
+                                                        final TaskConstructor constructor,
+                                                        final String disposalName) {
+        Map<PsiField, String> values = new HashMap<>();
+        PsiNewExpression creation = TaskConstructor.findCreation(executeCall);
+        // the statement of the execute call, or the declaration of the local variable that holds the task
+        PsiStatement statement = creation == null ? null : PsiTreeUtil.getParentOfType(creation, PsiStatement.class);
+        if (statement == null) {
+            return values;
+        }
+        for (PsiField field : constructor.getCapturedFields()) {
+            PsiExpression argument = constructor.getArgument(field, creation);
+            String name = constructor.getCapturedValue(field, creation, disposalName);
+            values.put(field, name);
+            if (argument instanceof PsiLiteralExpression) {
+                continue;
             }
-            generateRxCode(factory, directCalls, methods.get(0), onProgressUpdateExist, innerAsync.getTaskName(),
-                num.addAndGet(1));
-        });
+            PsiDeclarationStatement declaration = factory
+                .createVariableDeclarationStatement(name, field.getType(), argument, statement);
+            PsiUtil.setModifierProperty((PsiLocalVariable) declaration.getDeclaredElements()[0], PsiModifier.FINAL,
+                true);
+            statement.getParent().addBefore(declaration, statement);
+        }
+        return values;
+    }
+
+    private static String capturedArguments(final TaskConstructor constructor, final String methodName,
+                                            final Map<PsiField, String> capturedValues) {
+        return constructor.getCapturedFields(methodName).stream()
+            .map(capturedValues::get)
+            .collect(Collectors.joining(", "));
     }
 
     private void generateRxCode(final PsiElementFactory factory, final PsiMethodCallExpression directCalls,
                                 final PsiMethodImpl method, final boolean onProgressUpdateExist,
-                                final String taskName, final int numberOfGeneration) {
-        PsiExpression[] arguments = directCalls.getArgumentList().getExpressions();
-        String disposalName = "d" + numberOfGeneration;
-        StringBuilder s = new StringBuilder(" ");
-        int k = directCalls.getText().contains("executeOnExecutor") ? 1 : 0;
-        for (int i = k; i < arguments.length; i++) {
-            s.append(arguments[i].getText()).append(",");
-        }
-        //remove last coma
-        s = new StringBuilder(s.substring(0, s.length() - 1));
-        PsiStatement rxStatement = rxStatements(factory, method, s.toString(), onProgressUpdateExist, taskName, disposalName);
-
-        PsiElement rxReplaceElement = directCalls.getParent().replace(rxStatement);
+                                final RxChainTemplate template, final String instrumentationTag) {
+        String disposalName = template.getDisposalName();
+        template.setArguments(RxChainTemplate.executeArguments(directCalls));
+        template.setProgressUpdate(onProgressUpdateExist);
+        template.setInstrumentationTag(instrumentationTag);
+        BlockingGet blockingGet = AnalyseAsyncTask.analyseBlockingGet(directCalls);
+        PsiElement replacedElement = directCalls.getParent();
+        if (blockingGet != null) {
+            replacedElement = composeBlockingGet(template, blockingGet);
+        }
+        PsiStatement rxStatement = factory.createStatementFromText(template.toStatementText(), method);
+        if (template.isRetained()) {
+            PsiCodeBlock retaining = factory.createCodeBlockFromText("{\n" + template.toRetainingStatementsText()
+                + "}", method);
+            for (PsiStatement retainingStatement : retaining.getStatements()) {
+                replacedElement.getParent().addBefore(retainingStatement, replacedElement);
+            }
+        }
+
+        PsiElement rxReplaceElement = replacedElement.replace(rxStatement);
         PsiStatement statement = factory
             .createStatementFromText("compositeDisposable.add(" + disposalName + ");", method);
-        method.addAfter(statement, rxReplaceElement);
+        rxReplaceElement.getParent().addAfter(statement, rxReplaceElement);
     }
 
-    @NotNull private PsiStatement rxStatements(final PsiElementFactory factory, final PsiMethodImpl method,
-                                               final String s, final boolean onProgressUpdateExist,
-                                               final String taskName, final String disposalName) {
-        // taskName is camelcase and starts with lower letter
-        char[] name = taskName.toCharArray();
-        name[0] = Character.toUpperCase(name[0]);
-        return factory.createStatementFromText(
-            "Disposable " + disposalName + " = Single.fromCallable(() -> do" + new String(name) + "(" + (
-                onProgressUpdateExist
-                    ? Commons.PROGRESS_SUBJECT + "," : "") + s + "))\n"
-                + ".subscribeOn(Schedulers.io())\n" + ".observeOn(AndroidSchedulers.mainThread())\n"
-                + ".subscribe(s -> " + taskName + "PostExecute(s));", method);
+    /**
+     * Move the code that waits for the result of get() to the subscription of the chain and the catch section
+     * to its error handler. The statements of the try block before get() move before the try statement,
+     * which is then replaced by the chain.
+     *
+     * @return the element that the chain replaces
+     */
+    private PsiElement composeBlockingGet(final RxChainTemplate template, final BlockingGet blockingGet) {
+        template.setBlockingGet(blockingGet);
+        PsiStatement getStatement = blockingGet.getStatement();
+        PsiStatement tryStatement = blockingGet.getTryStatement();
+        PsiCodeBlock tryBlock = Objects.requireNonNull(blockingGet.getTryStatement().getTryBlock());
+        for (PsiStatement previous : tryBlock.getStatements()) {
+            if (previous == getStatement) {
+                break;
+            }
+            tryStatement.getParent().addBefore(previous, tryStatement);
+        }
+        return tryStatement;
     }
 
-    private void addOnPreExecute(final PsiElementFactory factory, final PsiReference executeCalls,
-                                 final PsiMethodImpl method, final String taskName) {
-        PsiStatement onPreExecuteStatement = factory
-            .createStatementFromText(taskName + "PreExecute();\n", method);
-        PsiElement parent = PsiTreeUtil
-            .findFirstParent(executeCalls.getElement(), false, e -> e instanceof PsiExpressionStatement);
-        method.addBefore(onPreExecuteStatement, parent);
+    private void addOnPreExecute(final PsiElementFactory factory, final PsiMethodCallExpression executeCall,
+                                 final PsiMethodImpl method, final String preExecute) {
+        PsiStatement onPreExecuteStatement = factory.createStatementFromText(preExecute + ";\n", method);
+        PsiStatement parent = PsiTreeUtil.getParentOfType(executeCall, PsiStatement.class);
+        Objects.requireNonNull(parent).getParent().addBefore(onPreExecuteStatement, parent);
     }
 }
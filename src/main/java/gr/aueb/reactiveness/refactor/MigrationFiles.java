@@ -0,0 +1,40 @@
+package gr.aueb.reactiveness.refactor;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiJavaFile;
+
+import java.util.function.Supplier;
+
+/**
+ * The files that the migration generates next to the migrated classes, such as the SharedTasks and the
+ * RxTaskMetrics helpers. The files are added to the directory of the project, the preview keeps them apart.
+ *
+ * @author taggelis
+ */
+public class MigrationFiles {
+
+    /**
+     * Find the java file of the name in the directory of the neighbour file, or create it with the text. Must be
+     * called inside a write command.
+     *
+     * @param neighbour the file that the generated file is placed next to
+     * @param fileName  the name of the generated file
+     * @param text      the text of the file, if it does not exist
+     * @return the java file, null if it cannot be created
+     */
+    public PsiJavaFile findOrCreate(final PsiFile neighbour, final String fileName, final Supplier<String> text) {
+        PsiDirectory directory = neighbour.getOriginalFile().getContainingDirectory();
+        if (directory == null) {
+            return null;
+        }
+        PsiFile file = directory.findFile(fileName);
+        if (file == null) {
+            file = (PsiFile) directory.add(PsiFileFactory.getInstance(directory.getProject())
+                .createFileFromText(fileName, JavaFileType.INSTANCE, text.get()));
+        }
+        return file instanceof PsiJavaFile ? (PsiJavaFile) file : null;
+    }
+}
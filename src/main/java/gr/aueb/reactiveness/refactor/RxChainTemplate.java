@@ -0,0 +1,353 @@
+package gr.aueb.reactiveness.refactor;
+
+import com.intellij.psi.PsiDeclarationStatement;
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiLocalVariable;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.PsiParameter;
+import com.intellij.psi.PsiStatement;
+import com.intellij.psi.util.PsiTreeUtil;
+import gr.aueb.reactiveness.analysis.BlockingGet;
+import gr.aueb.reactiveness.utils.Commons;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * The text of the Rx chain that replaces an AsyncTask execute call.
+ *
+ * @author taggelis
+ */
+public class RxChainTemplate {
+
+    private final String taskName;
+    private final String disposalName;
+    private String arguments = "";
+    private String backgroundCaptures = "";
+    private String postExecuteCaptures = "";
+    private boolean progressUpdate;
+    private String instrumentationTag;
+    private String timeout;
+    private String resultName = "s";
+    private String continuation;
+    private String errorName;
+    private String errorHandler;
+    private String resultType;
+    private String resultSlot;
+    private String handedOver;
+    private String retainedTasksClass;
+    private String cacheField;
+    private String preExecute;
+    private String sharedBackground;
+    private String sharedLiterals;
+
+    /**
+     * Instantiates a new Rx chain template.
+     *
+     * @param taskName     the task name, camelcase starting with lower letter
+     * @param disposalName the name of the generated disposable
+     */
+    public RxChainTemplate(final String taskName, final String disposalName) {
+        this.taskName = taskName;
+        this.disposalName = disposalName;
+    }
+
+    /**
+     * Sets the arguments passed to the background method, comma separated.
+     *
+     * @param arguments the arguments
+     */
+    public void setArguments(final String arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * Sets the values of the constructor state that the background method receives, comma separated.
+     *
+     * @param backgroundCaptures the captured values
+     */
+    public void setBackgroundCaptures(final String backgroundCaptures) {
+        this.backgroundCaptures = backgroundCaptures;
+    }
+
+    /**
+     * Sets the values of the constructor state that the post execute method receives, comma separated.
+     *
+     * @param postExecuteCaptures the captured values
+     */
+    public void setPostExecuteCaptures(final String postExecuteCaptures) {
+        this.postExecuteCaptures = postExecuteCaptures;
+    }
+
+    /**
+     * Gets the name of the generated disposable.
+     *
+     * @return the disposal name
+     */
+    public String getDisposalName() {
+        return disposalName;
+    }
+
+    /**
+     * Sets if the progress subject is passed to the background method.
+     *
+     * @param progressUpdate the progress update
+     */
+    public void setProgressUpdate(final boolean progressUpdate) {
+        this.progressUpdate = progressUpdate;
+    }
+
+    /**
+     * Sets the tag under which the chain records its latency through RxTaskMetrics, null to not instrument it.
+     *
+     * @param instrumentationTag the instrumentation tag
+     */
+    public void setInstrumentationTag(final String instrumentationTag) {
+        this.instrumentationTag = instrumentationTag;
+    }
+
+    /**
+     * Sets the arguments of the timeout that the chain fails after, null for no timeout.
+     *
+     * @param timeout the comma separated timeout and unit
+     */
+    public void setTimeout(final String timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the code that runs on the main thread before the post execute method, with the result of the task. The
+     * code followed get() in the same main thread message, so it ran before the onPostExecute that the task posted.
+     *
+     * @param resultName   the name of the result in the continuation
+     * @param continuation the statements of the continuation
+     */
+    public void setContinuation(final String resultName, final String continuation) {
+        this.resultName = resultName;
+        this.continuation = continuation;
+    }
+
+    /**
+     * Sets the code that handles the errors of the chain, null to not handle them.
+     *
+     * @param errorName    the name of the error in the handler
+     * @param errorHandler the code block of the handler
+     */
+    public void setErrorHandler(final String errorName, final String errorHandler) {
+        this.errorName = errorName;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Sets the holder that the background method returns the result in, together with the fields that it hands
+     * over to the post execute method.
+     *
+     * @param resultType the type of the result of the task
+     * @param resultSlot the holder field of the result
+     * @param handedOver the holder fields that are handed over, comma separated
+     */
+    public void setResultHolder(final String resultType, final String resultSlot, final String handedOver) {
+        this.resultType = resultType;
+        this.resultSlot = resultSlot;
+        this.handedOver = handedOver;
+    }
+
+    /**
+     * Sets the ViewModel that caches the chain across configuration changes. The chain is started once and every
+     * Activity instance runs the pre execute method and subscribes to the cached result, as every instance ran the
+     * pre execute method of its own execution before. Every execution site has its own field, named after the task
+     * and the disposable of the site.
+     *
+     * @param retainedTasksClass the ViewModel class of the Activity
+     * @param preExecute         the pre execute call, null if the task has no pre execute method
+     */
+    public void setRetained(final String retainedTasksClass, final String preExecute) {
+        this.retainedTasksClass = retainedTasksClass;
+        this.cacheField = taskName + Character.toUpperCase(disposalName.charAt(0)) + disposalName.substring(1);
+        this.preExecute = preExecute;
+    }
+
+    /**
+     * Gets the field of the ViewModel that holds the cached chain.
+     *
+     * @return the cache field, null if the chain is not retained
+     */
+    public String getCacheField() {
+        return cacheField;
+    }
+
+    /**
+     * Sets the helper method that returns the Single of the background work, when the task shares it with its
+     * clones, instead of the extracted background method.
+     *
+     * @param sharedBackground the qualified name of the helper method
+     * @param sharedLiterals   the literals that the task passes to the helper before its arguments, comma separated
+     */
+    public void setSharedBackground(final String sharedBackground, final String sharedLiterals) {
+        this.sharedBackground = sharedBackground;
+        this.sharedLiterals = sharedLiterals;
+    }
+
+    /**
+     * Is retained boolean.
+     *
+     * @return true if the chain is cached across configuration changes
+     */
+    public boolean isRetained() {
+        return cacheField != null;
+    }
+
+    /**
+     * Compose the code that waits for the result of a get() call on the chain. The timeout of get() becomes
+     * the timeout of the chain, the statements after get() run after the post execute method with the result
+     * and the catch section handles the errors of the chain.
+     *
+     * @param blockingGet the blocking get, that must not be a hotspot
+     */
+    public void setBlockingGet(final BlockingGet blockingGet) {
+        PsiExpression[] getArguments = blockingGet.getGetCall().getArgumentList().getExpressions();
+        if (getArguments.length == 2) {
+            setTimeout(getArguments[0].getText() + ", " + getArguments[1].getText());
+        }
+        PsiStatement getStatement = blockingGet.getStatement();
+        String result = getStatement instanceof PsiDeclarationStatement
+            ? ((PsiLocalVariable) ((PsiDeclarationStatement) getStatement).getDeclaredElements()[0]).getName()
+            : disposalName + "Result";
+        StringBuilder statements = new StringBuilder();
+        for (PsiStatement next = PsiTreeUtil.getNextSiblingOfType(getStatement, PsiStatement.class); next != null;
+             next = PsiTreeUtil.getNextSiblingOfType(next, PsiStatement.class)) {
+            statements.append(next.getText()).append("\n");
+        }
+        setContinuation(result, statements.toString());
+        PsiParameter error = blockingGet.getCatchSection().getParameter();
+        if (error != null && blockingGet.getCatchSection().getCatchBlock() != null) {
+            setErrorHandler(error.getName(), blockingGet.getCatchSection().getCatchBlock().getText());
+        }
+    }
+
+    /**
+     * Gets the text of the declaration statement that subscribes the chain.
+     *
+     * @return the statement text
+     */
+    public String toStatementText() {
+        if (isRetained()) {
+            return "Disposable " + disposalName + " = " + retainedName() + "." + cacheField + "\n"
+                + ".observeOn(AndroidSchedulers.mainThread())\n" + subscribeText();
+        }
+        String callable = callableText();
+        if (instrumentationTag == null) {
+            return "Disposable " + disposalName + " = " + callable + "\n"
+                + ".subscribeOn(Schedulers.io())\n" + timeoutText() + ".observeOn(AndroidSchedulers.mainThread())\n"
+                + subscribeText();
+        }
+        // the trace starts when the chain is subscribed, the background hooks run before subscribeOn on the io
+        // thread and the delivery hook after observeOn on the main thread, where the errors of the background
+        // work and of the timeout end the trace too
+        String trace = disposalName + "Trace";
+        return "Disposable " + disposalName + " = Single.defer(() -> {\n"
+            + "RxTaskMetrics.Trace " + trace + " = RxTaskMetrics.begin(\"" + instrumentationTag + "\");\n"
+            + "return " + callable + "\n"
+            + ".doOnSubscribe(" + disposalName + "Subscription -> " + trace + ".started())\n"
+            + ".doOnSuccess(" + disposalName + "Result -> " + trace + ".completed())\n"
+            + ".subscribeOn(Schedulers.io())\n" + timeoutText() + ".observeOn(AndroidSchedulers.mainThread())\n"
+            + ".doOnSuccess(" + disposalName + "Result -> " + trace + ".delivered())\n"
+            + ".doOnError(" + disposalName + "Error -> " + trace + ".failed())\n"
+            + ".doOnDispose(" + trace + "::disposed);\n"
+            + "})\n"
+            + subscribeText();
+    }
+
+    /**
+     * Gets the text of the statements that look up the ViewModel and start the cached chain, unless a previous
+     * instance of the Activity has already started it. They precede the statement that subscribes the chain.
+     *
+     * @return the statements text
+     */
+    public String toRetainingStatementsText() {
+        String retained = retainedName();
+        return retainedTasksClass + " " + retained + " = new ViewModelProvider(this).get(" + retainedTasksClass
+            + ".class);\n"
+            + (preExecute == null ? "" : preExecute + ";\n")
+            + "if (" + retained + "." + cacheField + " == null) {\n"
+            + retained + "." + cacheField + " = " + callableText() + "\n"
+            + ".subscribeOn(Schedulers.io())\n"
+            + ".cache();\n"
+            + "}\n";
+    }
+
+    /**
+     * The arguments of an execute call, without the executor of executeOnExecutor.
+     *
+     * @param executeCall the execute call
+     * @return the comma separated arguments
+     */
+    public static String executeArguments(final PsiMethodCallExpression executeCall) {
+        PsiExpression[] arguments = executeCall.getArgumentList().getExpressions();
+        StringBuilder s = new StringBuilder(" ");
+        int k = "executeOnExecutor".equals(executeCall.getMethodExpression().getReferenceName()) ? 1 : 0;
+        for (int i = k; i < arguments.length; i++) {
+            s.append(arguments[i].getText()).append(",");
+        }
+        //remove last coma
+        return s.substring(0, s.length() - 1);
+    }
+
+    private String callableText() {
+        if (sharedBackground != null) {
+            return sharedBackground + "(" + join(sharedLiterals, backgroundArguments()) + ")";
+        }
+        return "Single.fromCallable(() -> do" + capitalizedTaskName() + "(" + backgroundArguments() + "))";
+    }
+
+    private String retainedName() {
+        return disposalName + "Retained";
+    }
+
+    private String timeoutText() {
+        return timeout == null ? "" : ".timeout(" + timeout + ")\n";
+    }
+
+    private String subscribeText() {
+        String onSuccess;
+        if (resultSlot == null) {
+            String postExecute = taskName + "PostExecute(" + join(postExecuteCaptures, resultName) + ")";
+            onSuccess = continuation == null
+                ? resultName + " -> " + postExecute
+                : resultName + " -> {\n" + continuation + "\n" + postExecute + ";\n}";
+        } else {
+            // the holder is unpacked on the main thread, the continuation still sees the result under its name
+            String holder = disposalName + "Holder";
+            String handedArguments = Arrays.stream(handedOver.split(","))
+                .map(field -> holder + "." + field.trim())
+                .collect(Collectors.joining(", "));
+            String result = continuation == null ? holder + "." + resultSlot : resultName;
+            String postExecute = taskName + "PostExecute(" + join(postExecuteCaptures, result, handedArguments) + ")";
+            onSuccess = continuation == null
+                ? holder + " -> " + postExecute
+                : holder + " -> {\n" + resultType + " " + resultName + " = " + holder + "." + resultSlot + ";\n"
+                + continuation + "\n" + postExecute + ";\n}";
+        }
+        String onError = errorHandler == null ? "" : ", " + errorName + " -> " + errorHandler;
+        return ".subscribe(" + onSuccess + onError + ");";
+    }
+
+    private String backgroundArguments() {
+        // the progress observer is added before the parameters of the background method after its extraction
+        return join(progressUpdate ? Commons.PROGRESS_SUBJECT : "", backgroundCaptures, arguments);
+    }
+
+    private static String join(final String... arguments) {
+        return Arrays.stream(arguments)
+            .filter(argument -> !argument.trim().isEmpty())
+            .map(String::trim)
+            .collect(Collectors.joining(", "));
+    }
+
+    private String capitalizedTaskName() {
+        // taskName is camelcase and starts with lower letter
+        char[] name = taskName.toCharArray();
+        name[0] = Character.toUpperCase(name[0]);
+        return new String(name);
+    }
+}
@@ -0,0 +1,183 @@
+package gr.aueb.reactiveness.refactor;
+
+import com.intellij.codeInsight.generation.GenerateMembersUtil;
+import com.intellij.codeInsight.generation.GenerationInfo;
+import com.intellij.codeInsight.generation.PsiGenerationInfo;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiIfStatement;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiStatement;
+import com.intellij.psi.PsiType;
+import com.intellij.psi.impl.source.tree.java.PsiKeywordImpl;
+import com.intellij.psi.util.PsiUtil;
+import gr.aueb.reactiveness.settings.ReactivenessSettings;
+import gr.aueb.reactiveness.utils.ReactivenessUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The members and imports that a class needs to host Rx chains, shared by the AsyncTask migration and the
+ * legacy concurrency patterns.
+ *
+ * @author taggelis
+ */
+public final class RxHostSupport {
+
+    public static final String COMPOSITE_DISPOSABLE_IMPORT = "io.reactivex.rxjava3.disposables";
+    public static final String BEHAVIOR_SUBJECT_IMPORT = "io.reactivex.rxjava3.subjects";
+    public static final String ANDROID_SCHEDULERS_IMPORT = "io.reactivex.rxjava3.android.schedulers";
+    public static final String SINGLE_IMPORT = "io.reactivex.rxjava3.core";
+    public static final String SCHEDULERS_IMPORT = "io.reactivex.rxjava3.schedulers";
+    public static final String LIFECYCLE_IMPORT = "androidx.lifecycle";
+    public static final String RETAINED_TASKS_CLASS = "RetainedTasks";
+
+    private RxHostSupport() {
+    }
+
+    /**
+     * Create the compositeDisposable field that holds the subscriptions of the class, if not exists. It is an
+     * instance field of Activities when the chains are kept across configuration changes, so that the onDestroy of
+     * the previous Activity does not dispose the subscriptions of the next one.
+     *
+     * @param factory  the factory
+     * @param psiClass the psi class
+     */
+    public static void createCompositeDisposable(PsiElementFactory factory, PsiClass psiClass) {
+        if (!ReactivenessUtils.searchIfCompositeDisposableExists(psiClass)) {
+            ReactivenessUtils.addImport(factory, COMPOSITE_DISPOSABLE_IMPORT, psiClass);
+            String modifiers = ReactivenessSettings.getInstance().isRetainLifecycleTasks()
+                && ReactivenessUtils.findIfExtendsActivity(psiClass) ? "private final" : "private static final";
+            PsiField compositeDisposableField = factory
+                .createFieldFromText(
+                    modifiers + " CompositeDisposable compositeDisposable = new CompositeDisposable();",
+                    psiClass);
+            PsiField[] allFields = psiClass.getFields();
+            int position;
+            if(allFields.length > 0){
+                position = allFields[0].getTextOffset();
+            } else {
+                position =  psiClass.getLBrace().getTextOffset();
+            }
+            GenerateMembersUtil
+                .insertMembersAtOffset(psiClass, position,
+                    Collections.<GenerationInfo>singletonList(
+                        new PsiGenerationInfo<>(compositeDisposableField)));
+        }
+    }
+
+    /**
+     * Create the ViewModel that caches the chains of the Activity across configuration changes, if not exists,
+     * and add the field that caches a chain.
+     *
+     * @param factory    the factory
+     * @param psiClass   the Activity
+     * @param cacheField the name of the field
+     * @param resultType the type of the result of the chain
+     */
+    public static void createRetainedTasks(final PsiElementFactory factory, final PsiClass psiClass,
+                                           final String cacheField, final String resultType) {
+        PsiClass retainedTasks = psiClass.findInnerClassByName(RETAINED_TASKS_CLASS, false);
+        if (retainedTasks == null) {
+            // the default ViewModel factory creates it by reflection, so it must be public with a public constructor
+            PsiClass viewModel = factory.createClassFromText("public static class " + RETAINED_TASKS_CLASS
+                + " extends ViewModel {\n}", psiClass).getInnerClasses()[0];
+            retainedTasks = (PsiClass) psiClass.add(viewModel);
+            ReactivenessUtils.addImport(factory, LIFECYCLE_IMPORT, psiClass);
+        }
+        if (retainedTasks.findFieldByName(cacheField, false) == null) {
+            retainedTasks.add(factory.createFieldFromText("Single<" + resultType + "> " + cacheField + ";",
+                retainedTasks));
+        }
+    }
+
+    /**
+     * Dispose the subscriptions of the compositeDisposable on onDestroy. It is cleared and not disposed, since a
+     * static compositeDisposable is shared with the next instance of the class, e.g. after a configuration change,
+     * that adds its own subscriptions to it. The method is updated if exists, else it is created for Activities
+     * only.
+     *
+     * @param psiClass the psi class
+     * @param factory  the factory
+     */
+    public static void generateOrUpdateOnDestroy(PsiClass psiClass, final PsiElementFactory factory) {
+        Optional<PsiMethod> onDestroy = findOnDestroy(psiClass);
+        // method onDestroy exist then update it with compositeDisposable.clear() else create it(only for Activities).
+        if (onDestroy.isPresent()) {
+            if (Objects.requireNonNull(onDestroy.get().getBody()).getText().contains("compositeDisposable.")) {
+                // a previous migration of the class has already updated it
+                return;
+            }
+            PsiIfStatement ifStatement = (PsiIfStatement) factory
+                .createStatementFromText("if(a){\ncompositeDisposable.clear();\n}", null);
+
+            PsiExpression condition = ifStatement.getCondition();
+            PsiExpression expr = factory
+                .createExpressionFromText("compositeDisposable != null && !compositeDisposable.isDisposed()",
+                    onDestroy.get());
+            if (condition != null) {
+                condition.replace(expr);
+            }
+            onDestroy.get()
+                .addBefore(ifStatement, Objects.requireNonNull(onDestroy.get().getBody()).getLastBodyElement());
+        } else if (ReactivenessUtils.findIfExtendsActivity(psiClass)) {
+            PsiType voidKey = factory.createTypeFromText(PsiKeywordImpl.VOID, psiClass);
+            PsiMethod onDestroyMethod = factory.createMethod("onDestroy", voidKey);
+            onDestroyMethod.getModifierList().addAnnotation("Override");
+
+            PsiStatement superStatement = factory.createStatementFromText("super.onDestroy();", onDestroyMethod);
+            PsiIfStatement ifStatement = (PsiIfStatement) factory
+                .createStatementFromText("if(a){\ncompositeDisposable.clear();\n}", null);
+
+            PsiExpression condition = ifStatement.getCondition();
+            PsiExpression expr = factory
+                .createExpressionFromText("compositeDisposable != null && !compositeDisposable.isDisposed()",
+                    onDestroyMethod);
+            if (condition != null) {
+                condition.replace(expr);
+            }
+            PsiUtil.setModifierProperty(onDestroyMethod, PsiModifier.PROTECTED, true);
+            PsiElement superElement = onDestroyMethod.getBody().add(superStatement);
+            onDestroyMethod.getBody().addAfter(ifStatement, superElement);
+            psiClass.add(onDestroyMethod);
+        }
+    }
+
+    /**
+     * Find if the class disposes its subscriptions with its lifecycle, either because it is an Activity or
+     * because it has an onDestroy method.
+     *
+     * @param psiClass the psi class
+     * @return the boolean
+     */
+    public static boolean hasLifecycle(final PsiClass psiClass) {
+        return ReactivenessUtils.findIfExtendsActivity(psiClass) || findOnDestroy(psiClass).isPresent();
+    }
+
+    /**
+     * Add the on demand imports of the packages.
+     *
+     * @param factory  the factory
+     * @param psiClass the psi class
+     * @param packages the packages
+     */
+    public static void addImports(final PsiElementFactory factory, final PsiClass psiClass,
+                                  final String... packages) {
+        for (String packageName : packages) {
+            ReactivenessUtils.addImport(factory, packageName, psiClass);
+        }
+    }
+
+    private static Optional<PsiMethod> findOnDestroy(final PsiClass psiClass) {
+        return Arrays.stream(psiClass.getMethods())
+            .filter(psiMethod -> psiMethod.getName().equals("onDestroy"))
+            .findFirst();
+    }
+}
@@ -0,0 +1,92 @@
+package gr.aueb.reactiveness.refactor;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiShortNamesCache;
+import gr.aueb.reactiveness.utils.ReactivenessUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates the RxTaskMetrics runtime helper that the instrumented Rx chains record their latency to.
+ * The helper is generated once per project, next to the first class that gets an instrumented chain.
+ *
+ * @author taggelis
+ */
+public final class RxTaskMetricsGenerator {
+
+    /**
+     * The name of the runtime helper class.
+     */
+    public static final String HELPER_CLASS = "RxTaskMetrics";
+
+    private static final Logger LOG = Logger.getInstance(RxTaskMetricsGenerator.class);
+    private static final String TEMPLATE = "/templates/RxTaskMetrics.java.template";
+
+    private RxTaskMetricsGenerator() {
+    }
+
+    /**
+     * The tag of the chains of a task, the parent class name along with the task name.
+     *
+     * @param parentClass the parent class
+     * @param taskName    the task name
+     * @return the instrumentation tag
+     */
+    public static String instrumentationTag(final PsiClass parentClass, final String taskName) {
+        return parentClass.getName() + "." + taskName;
+    }
+
+    /**
+     * Make sure that the runtime helper exists and is imported by the parent class. Must be called inside a
+     * write command.
+     *
+     * @param factory     the factory
+     * @param parentClass the class that contains instrumented chains
+     * @param files       the files that the migration generates
+     */
+    public static void ensureRuntimeHelper(final PsiElementFactory factory, final PsiClass parentClass,
+                                           final MigrationFiles files) {
+        Project project = parentClass.getProject();
+        PsiFile parentFile = parentClass.getContainingFile();
+        if (!(parentFile instanceof PsiJavaFile)) {
+            return;
+        }
+        String parentPackage = ((PsiJavaFile) parentFile).getPackageName();
+        PsiClass[] helpers = PsiShortNamesCache.getInstance(project)
+            .getClassesByName(HELPER_CLASS, GlobalSearchScope.projectScope(project));
+        String helperPackage;
+        if (helpers.length > 0) {
+            helperPackage = ((PsiJavaFile) helpers[0].getContainingFile()).getPackageName();
+        } else {
+            String template = loadTemplate();
+            // the index may not see a helper generated earlier in the same command yet
+            if (template == null || files.findOrCreate(parentFile, HELPER_CLASS + ".java",
+                () -> template.replace("package ${PACKAGE};\n\n",
+                    parentPackage.isEmpty() ? "" : "package " + parentPackage + ";\n\n")) == null) {
+                return;
+            }
+            helperPackage = parentPackage;
+        }
+        if (!helperPackage.equals(parentPackage)) {
+            ReactivenessUtils.addImport(factory, helperPackage, parentClass);
+        }
+    }
+
+    private static String loadTemplate() {
+        try (InputStream stream = RxTaskMetricsGenerator.class.getResourceAsStream(TEMPLATE)) {
+            return new String(FileUtil.loadBytes(stream), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.error("Could not load the template " + TEMPLATE, e);
+            return null;
+        }
+    }
+}
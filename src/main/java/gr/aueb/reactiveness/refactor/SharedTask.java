@@ -0,0 +1,191 @@
+package gr.aueb.reactiveness.refactor;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.PsiIdentifier;
+import com.intellij.psi.PsiImportList;
+import com.intellij.psi.PsiImportStatementBase;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiLiteralExpression;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiParameter;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import gr.aueb.reactiveness.analysis.TaskClones;
+import gr.aueb.reactiveness.utils.AsyncTaskInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The background work of a task that is shared with its clones. The doInBackground method of the first task of a
+ * group of clones becomes a static method of the generated SharedTasks class that returns a Single, and every
+ * task of the group calls it with its own literals instead of a copy of the method in its parent class.
+ *
+ * @author taggelis
+ */
+final class SharedTask {
+
+    /**
+     * The name of the generated helper class.
+     */
+    static final String HELPER_CLASS = "SharedTasks";
+
+    private final PsiMethod helperMethod;
+    private final String literalArguments;
+    private final String resultType;
+
+    private SharedTask(final PsiMethod helperMethod, final String literalArguments, final String resultType) {
+        this.helperMethod = helperMethod;
+        this.literalArguments = literalArguments;
+        this.resultType = resultType;
+    }
+
+    /**
+     * Generate the helper method of a group of clones in the SharedTasks class of the package of the group, next
+     * to the first task. Must be called inside a write command.
+     *
+     * @param factory the factory
+     * @param clones  the group of clones
+     * @param files   the files that the migration generates
+     * @return the shared task of every task of the group, empty if the helper cannot be generated
+     */
+    static Map<PsiClass, SharedTask> share(final PsiElementFactory factory, final TaskClones clones,
+                                           final MigrationFiles files) {
+        Map<PsiClass, SharedTask> sharedTasks = new HashMap<>();
+        PsiMethod prototype = clones.getPrototype();
+        PsiJavaFile prototypeFile = (PsiJavaFile) prototype.getContainingFile();
+        PsiJavaFile helperFile = files.findOrCreate(prototypeFile, HELPER_CLASS + ".java",
+            () -> helperText(clones.getHelperPackage()));
+        if (helperFile == null || helperFile.getClasses().length == 0) {
+            return sharedTasks;
+        }
+        PsiClass helperClass = helperFile.getClasses()[0];
+        copyImports(prototypeFile, helperFile);
+
+        // the varying literals become the leading parameters, the parameters of doInBackground may be varargs.
+        // The literals of the copy are in the order of the literals of the prototype, that are indexed by the
+        // clones without the ones that cannot be parameters
+        PsiMethod body = (PsiMethod) prototype.copy();
+        List<PsiLiteralExpression> prototypeLiterals = new ArrayList<>(PsiTreeUtil
+            .findChildrenOfType(prototype.getBody(), PsiLiteralExpression.class));
+        List<PsiLiteralExpression> bodyLiterals = new ArrayList<>(PsiTreeUtil.findChildrenOfType(body.getBody(),
+            PsiLiteralExpression.class));
+        List<PsiLiteralExpression> literals = new ArrayList<>();
+        for (int i = 0; i < prototypeLiterals.size(); i++) {
+            if (TaskClones.isParameterizable(prototypeLiterals.get(i))) {
+                literals.add(bodyLiterals.get(i));
+            }
+        }
+        Set<String> names = PsiTreeUtil.findChildrenOfType(prototype, PsiIdentifier.class).stream()
+            .map(PsiIdentifier::getText)
+            .collect(Collectors.toSet());
+        List<String> parameters = new ArrayList<>();
+        int n = 1;
+        for (int index : clones.getVaryingLiterals()) {
+            while (names.contains("value" + n)) {
+                n += 1;
+            }
+            PsiLiteralExpression literal = literals.get(index);
+            parameters.add("final " + Objects.requireNonNull(literal.getType()).getPresentableText() + " value" + n);
+            literal.replace(factory.createExpressionFromText("value" + n, literal));
+            n += 1;
+        }
+        Arrays.stream(body.getParameterList().getParameters()).map(PsiParameter::getText).forEach(parameters::add);
+
+        String resultType = Objects.requireNonNull(prototype.getReturnTypeElement()).getText();
+        String taskName = new AsyncTaskInstance(clones.getTasks().get(0)).getTaskName();
+        String methodName = taskName;
+        for (int i = 2; helperClass.findMethodsByName(methodName, false).length > 0; i++) {
+            methodName = taskName + i;
+        }
+        String tasks = clones.getTasks().stream().map(PsiClass::getName).collect(Collectors.joining(", "));
+        PsiMethod helperMethod = (PsiMethod) helperClass.add(factory.createMethodFromText("/**\n"
+            + " * The background work of " + tasks + ".\n"
+            + " */\n"
+            + "public static Single<" + resultType + "> " + methodName + "(" + String.join(", ", parameters)
+            + ") {\n"
+            + "return Single.fromCallable(() -> " + Objects.requireNonNull(body.getBody()).getText() + ");\n"
+            + "}", helperClass));
+        helperMethod = (PsiMethod) CodeStyleManager.getInstance(helperFile.getProject()).reformat(helperMethod);
+        JavaCodeStyleManager.getInstance(helperFile.getProject()).optimizeImports(helperFile);
+
+        for (PsiClass task : clones.getTasks()) {
+            sharedTasks.put(task, new SharedTask(helperMethod, String.join(", ", clones.getVaryingLiterals(task)),
+                resultType));
+        }
+        return sharedTasks;
+    }
+
+    /**
+     * Gets the helper method.
+     *
+     * @return the helper method
+     */
+    PsiMethod getHelperMethod() {
+        return helperMethod;
+    }
+
+    /**
+     * Gets the type of the result of the background work.
+     *
+     * @return the result type
+     */
+    String getResultType() {
+        return resultType;
+    }
+
+    /**
+     * Make the chain call the helper method. The helper of another package is called by its qualified name, since
+     * an import of it could clash with a class of the same name, e.g. the helper of the package of the parent class.
+     *
+     * @param parentClass the parent class of the task
+     * @param template    the template of the chain
+     */
+    void configure(final PsiClass parentClass, final RxChainTemplate template) {
+        String helperPackage = ((PsiJavaFile) helperMethod.getContainingFile()).getPackageName();
+        boolean samePackage = !(parentClass.getContainingFile() instanceof PsiJavaFile)
+            || helperPackage.equals(((PsiJavaFile) parentClass.getContainingFile()).getPackageName());
+        String helperClass = samePackage || helperPackage.isEmpty() ? HELPER_CLASS
+            : helperPackage + "." + HELPER_CLASS;
+        template.setSharedBackground(helperClass + "." + helperMethod.getName(), literalArguments);
+    }
+
+    private static String helperText(final String helperPackage) {
+        return (helperPackage.isEmpty() ? "" : "package " + helperPackage + ";\n\n")
+            + "import " + RxHostSupport.SINGLE_IMPORT + ".*;\n\n"
+            + "/**\n"
+            + " * The background work that the migrated tasks with identical doInBackground methods share.\n"
+            + " */\n"
+            + "public final class " + HELPER_CLASS + " {\n\n"
+            + "    private " + HELPER_CLASS + "() {\n"
+            + "    }\n"
+            + "}\n";
+    }
+
+    /**
+     * The helper is in the package of the prototype, so its imports resolve the rest names of the method.
+     */
+    private static void copyImports(final PsiJavaFile prototypeFile, final PsiJavaFile helperFile) {
+        PsiImportList prototypeImports = prototypeFile.getImportList();
+        PsiImportList helperImports = helperFile.getImportList();
+        if (prototypeImports == null || helperImports == null) {
+            return;
+        }
+        Set<String> existing = Arrays.stream(helperImports.getAllImportStatements())
+            .map(PsiImportStatementBase::getText)
+            .collect(Collectors.toSet());
+        for (PsiImportStatementBase statement : prototypeImports.getAllImportStatements()) {
+            if (!existing.contains(statement.getText())) {
+                helperImports.add(statement.copy());
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package gr.aueb.reactiveness.refactor;
+
+import com.intellij.codeInsight.generation.GenerateMembersUtil;
+import com.intellij.codeInsight.generation.GenerationInfo;
+import com.intellij.codeInsight.generation.PsiGenerationInfo;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiLambdaExpression;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiReturnStatement;
+import com.intellij.psi.util.PsiTreeUtil;
+import gr.aueb.reactiveness.utils.AsyncTaskInstance;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * The class that the background method of a migrated task returns when the task hands fields over from
+ * doInBackground to onPostExecute. It holds the result of the task along with the values of these fields, so
+ * that every execution delivers its own values to the main thread instead of sharing fields of the parent class.
+ *
+ * @author taggelis
+ */
+final class TaskResultHolder {
+
+    private final String className;
+    private final String resultType;
+    private final String resultSlot;
+    private final List<PsiField> fields;
+
+    private TaskResultHolder(final String className, final String resultType, final String resultSlot,
+                             final List<PsiField> fields) {
+        this.className = className;
+        this.resultType = resultType;
+        this.resultSlot = resultSlot;
+        this.fields = fields;
+    }
+
+    /**
+     * Name the holder of the fields that a task hands over.
+     *
+     * @param parentClass    the parent class
+     * @param instance       the async task instance
+     * @param fields         the handed over fields
+     * @param doInBackground the doInBackground method of the task
+     * @return the result holder
+     */
+    static TaskResultHolder create(final PsiClass parentClass, final AsyncTaskInstance instance,
+                                   final List<PsiField> fields, final PsiMethod doInBackground) {
+        String resultType = Objects.requireNonNull(doInBackground.getReturnTypeElement()).getText();
+        String resultSlot = fields.stream().anyMatch(field -> "result".equals(field.getName()))
+            ? "taskResult" : "result";
+        char[] taskName = instance.getTaskName().toCharArray();
+        taskName[0] = Character.toUpperCase(taskName[0]);
+        String className = new String(taskName) + "Result";
+        for (int i = 2; parentClass.findInnerClassByName(className, false) != null; i++) {
+            className = new String(taskName) + "Result" + i;
+        }
+        return new TaskResultHolder(className, resultType, resultSlot, fields);
+    }
+
+    private String toClassText() {
+        StringBuilder members = new StringBuilder("private final " + resultType + " " + resultSlot + ";\n");
+        StringBuilder parameters = new StringBuilder("final " + resultType + " " + resultSlot);
+        StringBuilder assignments = new StringBuilder("this." + resultSlot + " = " + resultSlot + ";\n");
+        for (PsiField field : fields) {
+            String type = Objects.requireNonNull(field.getTypeElement()).getText();
+            members.append("private final ").append(type).append(" ").append(field.getName()).append(";\n");
+            parameters.append(", final ").append(type).append(" ").append(field.getName());
+            assignments.append("this.").append(field.getName()).append(" = ").append(field.getName()).append(";\n");
+        }
+        return "private static final class " + className + " {\n" + members + "\nprivate " + className + "("
+            + parameters + ") {\n" + assignments + "}\n}";
+    }
+
+    private String wrapResult(final String result) {
+        return "new " + className + "(" + result + ", " + String.join(", ", handedOver()) + ")";
+    }
+
+    /**
+     * The statement returns the result of doInBackground itself, not of its lambdas and anonymous classes.
+     */
+    private static boolean isReturnedBy(final PsiReturnStatement returnStatement, final PsiMethod doInBackground) {
+        return returnStatement.getReturnValue() != null
+            && PsiTreeUtil.getParentOfType(returnStatement, PsiMethod.class, PsiLambdaExpression.class)
+            == doInBackground;
+    }
+
+    /**
+     * Generate the holder class in the parent class and make doInBackground return it and onPostExecute receive
+     * the handed over fields as its last parameters. The fields must already be local variables of
+     * doInBackground. Must be called inside a write command.
+     *
+     * @param factory        the factory
+     * @param parentClass    the parent class
+     * @param instance       the async task instance
+     * @param doInBackground the doInBackground method of the task
+     * @param onPostExecute  the onPostExecute method of the task
+     */
+    void generate(final PsiElementFactory factory, final PsiClass parentClass, final AsyncTaskInstance instance,
+                  final PsiMethod doInBackground, final PsiMethod onPostExecute) {
+        PsiClass holderClass = factory.createClassFromText(toClassText(), parentClass).getInnerClasses()[0];
+        GenerateMembersUtil.insertMembersAtOffset(parentClass, instance.getTextOffset() - 1,
+            Collections.<GenerationInfo>singletonList(new PsiGenerationInfo<>(holderClass)));
+
+        for (PsiReturnStatement returnStatement : PsiTreeUtil.findChildrenOfType(doInBackground,
+            PsiReturnStatement.class)) {
+            if (isReturnedBy(returnStatement, doInBackground)) {
+                returnStatement.getReturnValue().replace(factory.createExpressionFromText(
+                    wrapResult(returnStatement.getReturnValue().getText()), doInBackground));
+            }
+        }
+        Objects.requireNonNull(doInBackground.getReturnTypeElement())
+            .replace(factory.createTypeElement(factory.createTypeFromText(className, doInBackground)));
+        for (PsiField field : fields) {
+            onPostExecute.getParameterList().add(factory.createParameter(field.getName(), field.getType()));
+        }
+    }
+
+    /**
+     * Make the chain unpack the holder for the post execute method.
+     *
+     * @param template the template of the chain
+     */
+    void configure(final RxChainTemplate template) {
+        template.setResultHolder(resultType, resultSlot, String.join(", ", handedOver()));
+    }
+
+    private List<String> handedOver() {
+        return fields.stream().map(PsiField::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,57 @@
+package gr.aueb.reactiveness.report;
+
+/**
+ * The phases of a migration run that are measured by the {@link MigrationReport}.
+ *
+ * @author taggelis
+ */
+public enum MigrationPhase {
+    /**
+     * Listing the java files of the project.
+     */
+    FILE_ENUMERATION,
+    /**
+     * Searching the files for anonymous asyncTasks.
+     */
+    ANONYMOUS_SEARCH,
+    /**
+     * Converting anonymous asyncTasks to inner classes.
+     */
+    ANONYMOUS_CONVERSION,
+    /**
+     * Searching the files for inner asyncTasks.
+     */
+    INNER_CLASS_SEARCH,
+    /**
+     * Detecting and validating the legacy concurrency patterns of the files.
+     */
+    PATTERN_SEARCH,
+    /**
+     * Rewriting the legacy concurrency patterns to Rx.
+     */
+    PATTERN_REWRITE,
+    /**
+     * Grouping the asyncTasks of the project with identical doInBackground methods.
+     */
+    CLONE_DETECTION,
+    /**
+     * Validating that an asyncTask can be refactored.
+     */
+    VALIDATION,
+    /**
+     * Searching the references of an asyncTask for its execute calls.
+     */
+    REFERENCE_SEARCH,
+    /**
+     * Rewriting the psi of the parent class.
+     */
+    PSI_REWRITE,
+    /**
+     * Reformatting the refactored file.
+     */
+    REFORMAT,
+    /**
+     * Optimizing the imports of the refactored file.
+     */
+    OPTIMIZE_IMPORTS
+}
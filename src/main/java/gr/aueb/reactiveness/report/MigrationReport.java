@@ -0,0 +1,446 @@
+package gr.aueb.reactiveness.report;
+
+import com.google.gson.GsonBuilder;
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import com.intellij.ide.plugins.PluginManager;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiNamedElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Records the wall time, cpu time and allocations of every phase of a migration run, per phase and per file,
+ * along with the number of files and tasks. At the end of the run the report is written as json under the
+ * IDE log directory and summarized in a notification.
+ * Phases are measured one after the other and never nest, so the per file totals add up.
+ *
+ * @author taggelis
+ */
+public class MigrationReport {
+
+    /**
+     * Files searched for asyncTasks.
+     */
+    public static final String FILES = "files";
+    /**
+     * Files that contain anonymous asyncTasks.
+     */
+    public static final String ANONYMOUS_FILES = "filesWithAnonymousTasks";
+    /**
+     * Inner asyncTasks found.
+     */
+    public static final String INNER_TASKS = "innerTasks";
+    /**
+     * Tasks migrated to Rx.
+     */
+    public static final String MIGRATED_TASKS = "migratedTasks";
+    /**
+     * Tasks rejected by the validations.
+     */
+    public static final String REJECTED_TASKS = "rejectedTasks";
+    /**
+     * Tasks that share their background work with their clones.
+     */
+    public static final String SHARED_TASKS = "sharedTasks";
+
+    /**
+     * Occurrences of legacy concurrency patterns found.
+     */
+    public static final String PATTERNS = "legacyPatterns";
+    /**
+     * Occurrences of legacy concurrency patterns migrated to Rx.
+     */
+    public static final String MIGRATED_PATTERNS = "migratedLegacyPatterns";
+    /**
+     * Finding of a legacy concurrency pattern rejected by its validator.
+     */
+    public static final String REJECTED_PATTERN = "REJECTED_LEGACY_PATTERN";
+    /**
+     * Finding of a get() call that keeps blocking the main thread.
+     */
+    public static final String BLOCKING_GET = "MAIN_THREAD_BLOCKING_GET";
+    /**
+     * Finding of a task field that the executions of the migrated task share across threads.
+     */
+    public static final String SHARED_FIELD = "SHARED_TASK_FIELD";
+    /**
+     * Finding of a task started from a lifecycle entry point that a configuration change starts again.
+     */
+    public static final String RESTARTED_TASK = "RESTARTED_ON_CONFIGURATION_CHANGE";
+    /**
+     * Finding of a task started from onCreate whose chain is kept across configuration changes, so that it no longer
+     * runs again for the recreated Activity.
+     */
+    public static final String RETAINED_TASK = "RETAINED_ACROSS_CONFIGURATION_CHANGES";
+
+    private static final Logger LOG = Logger.getInstance(MigrationReport.class);
+    private static final String NOTIFICATION_GROUP = "Reactiveness";
+    private static final int OUTLIERS = 10;
+    private static final String NO_FILE = "<project>";
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final Map<MigrationPhase, Stats> phases = new EnumMap<>(MigrationPhase.class);
+    private final Map<String, Stats> files = new LinkedHashMap<>();
+    private final Map<String, Integer> counters = new LinkedHashMap<>();
+    private final List<Map<String, Object>> findings = new ArrayList<>();
+    private final List<Map<String, Object>> sharedGroups = new ArrayList<>();
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Start measuring a phase that is not bound to a single file. The measurement is recorded when it is closed.
+     *
+     * @param phase the phase
+     * @return the measurement
+     */
+    public Measurement start(final MigrationPhase phase) {
+        return new Measurement(phase, NO_FILE);
+    }
+
+    /**
+     * Start measuring a phase for the file. The measurement is recorded when it is closed.
+     *
+     * @param phase the phase
+     * @param file  the file
+     * @return the measurement
+     */
+    public Measurement start(final MigrationPhase phase, final VirtualFile file) {
+        return new Measurement(phase, file == null ? NO_FILE : file.getPath());
+    }
+
+    /**
+     * Start measuring a phase for the file of the psi element.
+     *
+     * @param phase   the phase
+     * @param element the psi element
+     * @return the measurement
+     */
+    public Measurement start(final MigrationPhase phase, final PsiElement element) {
+        PsiFile file = element == null ? null : element.getContainingFile();
+        return file == null ? start(phase) : new Measurement(phase, path(file));
+    }
+
+    /**
+     * Increment a counter of the run.
+     *
+     * @param counter the counter
+     */
+    public synchronized void increment(final String counter) {
+        counters.merge(counter, 1, Integer::sum);
+    }
+
+    /**
+     * Increment the task counter of a file.
+     *
+     * @param element a psi element of the file
+     */
+    public synchronized void incrementTasks(final PsiElement element) {
+        PsiFile file = element.getContainingFile();
+        files.computeIfAbsent(path(file), p -> new Stats()).tasks += 1;
+    }
+
+    /**
+     * Add a finding of the analysis for the code of the psi element, with the file and the position of it.
+     *
+     * @param kind    the kind of the finding
+     * @param element the psi element
+     * @param message the message
+     */
+    public synchronized void addFinding(final String kind, final PsiElement element, final String message) {
+        Map<String, Object> finding = new LinkedHashMap<>();
+        finding.put("kind", kind);
+        putLocation(finding, element);
+        finding.put("code", element.getText());
+        finding.put("message", message);
+        findings.add(finding);
+    }
+
+    /**
+     * Add a group of tasks that share their background work through a helper method.
+     *
+     * @param helper the qualified name of the helper method
+     * @param tasks  the tasks of the group
+     */
+    public synchronized void addSharedGroup(final String helper, final List<? extends PsiNamedElement> tasks) {
+        Map<String, Object> group = new LinkedHashMap<>();
+        group.put("helper", helper);
+        group.put("tasks", tasks.stream().map(task -> {
+            Map<String, Object> taskJson = new LinkedHashMap<>();
+            taskJson.put("name", task.getName());
+            putLocation(taskJson, task);
+            return taskJson;
+        }).collect(Collectors.toList()));
+        sharedGroups.add(group);
+        counters.merge(SHARED_TASKS, tasks.size(), Integer::sum);
+    }
+
+    /**
+     * Gets the number of findings of a kind.
+     *
+     * @param kind the kind of the finding
+     * @return the number of findings
+     */
+    public synchronized int getFindings(final String kind) {
+        return (int) findings.stream().filter(finding -> kind.equals(finding.get("kind"))).count();
+    }
+
+    /**
+     * Gets the value of a counter.
+     *
+     * @param counter the counter
+     * @return the value
+     */
+    public synchronized int getCounter(final String counter) {
+        return counters.getOrDefault(counter, 0);
+    }
+
+    /**
+     * Gets the total wall time of a phase.
+     *
+     * @param phase the phase
+     * @return the wall time in nanoseconds, zero if the phase has not been measured
+     */
+    public synchronized long getWallNanos(final MigrationPhase phase) {
+        Stats stats = phases.get(phase);
+        return stats == null ? 0 : stats.wallNanos;
+    }
+
+    /**
+     * Gets the total allocated bytes of a phase.
+     *
+     * @param phase the phase
+     * @return the allocated bytes, zero if the phase has not been measured or allocations are not supported
+     */
+    public synchronized long getAllocatedBytes(final MigrationPhase phase) {
+        Stats stats = phases.get(phase);
+        return stats == null ? 0 : stats.allocatedBytes;
+    }
+
+    /**
+     * Gets the wall time since the report was created.
+     *
+     * @return the wall time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Write the json report and notify the user with a summary of the run.
+     *
+     * @param project the project
+     * @return the report file, null if it could not be written
+     */
+    public File finish(final Project project) {
+        long wallNanos = getElapsedNanos();
+        File reportFile = writeJson(project, wallNanos);
+        notifySummary(project, wallNanos, reportFile);
+        return reportFile;
+    }
+
+    /**
+     * The report as a json tree of maps and lists.
+     *
+     * @param project   the project
+     * @param wallNanos the wall time of the whole run
+     * @return the json tree
+     */
+    public synchronized Map<String, Object> toJson(final Project project, final long wallNanos) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        IdeaPluginDescriptor plugin = PluginManager.getPlugin(PluginId.getId("gr.aueb.reactiveness"));
+        json.put("pluginVersion", plugin == null ? null : plugin.getVersion());
+        json.put("project", project.getName());
+        json.put("startTime", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date(startTime)));
+        json.put("wallMillis", wallNanos / 1_000_000);
+        json.put("counters", new LinkedHashMap<>(counters));
+
+        Map<String, Object> phaseJson = new LinkedHashMap<>();
+        phases.forEach((phase, stats) -> phaseJson.put(phase.name(), stats.toJson()));
+        json.put("phases", phaseJson);
+        json.put("findings", new ArrayList<>(findings));
+        json.put("sharedGroups", new ArrayList<>(sharedGroups));
+
+        json.put("slowestFiles", slowestFiles().stream().map(entry -> {
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("path", entry.getKey());
+            file.putAll(entry.getValue().toJson());
+            return file;
+        }).collect(Collectors.toList()));
+
+        Map<String, Object> fileJson = new LinkedHashMap<>();
+        files.forEach((path, stats) -> fileJson.put(path, stats.toJson()));
+        json.put("files", fileJson);
+        return json;
+    }
+
+    private File writeJson(final Project project, final long wallNanos) {
+        File directory = new File(PathManager.getLogPath(), "reactiveness");
+        File reportFile = new File(directory,
+            "migration-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(startTime)) + ".json");
+        try {
+            Files.createDirectories(directory.toPath());
+            String json = new GsonBuilder().setPrettyPrinting().serializeNulls().create()
+                .toJson(toJson(project, wallNanos));
+            Files.write(reportFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+            return reportFile;
+        } catch (IOException e) {
+            LOG.warn("Could not write the migration report " + reportFile, e);
+            return null;
+        }
+    }
+
+    private void notifySummary(final Project project, final long wallNanos, final File reportFile) {
+        StringBuilder content = new StringBuilder()
+            .append("Migrated ").append(getCounter(MIGRATED_TASKS)).append(" of ")
+            .append(getCounter(INNER_TASKS)).append(" tasks in ").append(getCounter(FILES))
+            .append(" files, ").append(wallNanos / 1_000_000).append(" ms.");
+        if (getCounter(PATTERNS) > 0) {
+            content.append("<br/>Migrated ").append(getCounter(MIGRATED_PATTERNS)).append(" of ")
+                .append(getCounter(PATTERNS)).append(" legacy concurrency patterns.");
+        }
+        synchronized (this) {
+            if (!findings.isEmpty()) {
+                content.append("<br/>Findings: ").append(findings.size());
+            }
+            if (!sharedGroups.isEmpty()) {
+                content.append("<br/>Shared the background work of ").append(getCounter(SHARED_TASKS))
+                    .append(" tasks in ").append(sharedGroups.size()).append(" helper methods.");
+            }
+            phases.entrySet().stream()
+                .max(Comparator.comparingLong(entry -> entry.getValue().wallNanos))
+                .ifPresent(entry -> content.append("<br/>Slowest phase: ").append(entry.getKey())
+                    .append(" (").append(entry.getValue().wallNanos / 1_000_000).append(" ms)"));
+            slowestFiles().stream().limit(3).forEach(entry -> content.append("<br/>")
+                .append(new File(entry.getKey()).getName()).append(": ")
+                .append(entry.getValue().wallNanos / 1_000_000).append(" ms"));
+        }
+        if (reportFile != null) {
+            content.append("<br/>Report: ").append(reportFile.getPath());
+        }
+        Notifications.Bus.notify(new Notification(NOTIFICATION_GROUP, "AsyncTask migration finished",
+            content.toString(), NotificationType.INFORMATION), project);
+    }
+
+    private List<Map.Entry<String, Stats>> slowestFiles() {
+        List<Map.Entry<String, Stats>> sorted = new ArrayList<>(files.entrySet());
+        sorted.removeIf(entry -> NO_FILE.equals(entry.getKey()));
+        sorted.sort(Comparator.comparingLong((Map.Entry<String, Stats> entry) -> entry.getValue().wallNanos)
+            .reversed());
+        return sorted.subList(0, Math.min(OUTLIERS, sorted.size()));
+    }
+
+    /**
+     * The path of the file, or of the original file of a copy that the preview migrates.
+     */
+    private static String path(final PsiFile file) {
+        VirtualFile virtualFile = file == null ? null : file.getOriginalFile().getVirtualFile();
+        return virtualFile == null ? NO_FILE : virtualFile.getPath();
+    }
+
+    private static void putLocation(final Map<String, Object> json, final PsiElement element) {
+        PsiFile file = element.getContainingFile();
+        json.put("path", path(file));
+        Document document = file == null ? null
+            : PsiDocumentManager.getInstance(file.getProject()).getDocument(file);
+        if (document != null) {
+            int offset = element.getTextRange().getStartOffset();
+            int line = document.getLineNumber(offset);
+            json.put("line", line + 1);
+            json.put("column", offset - document.getLineStartOffset(line) + 1);
+        }
+    }
+
+    private long currentCpuNanos() {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long currentAllocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    private synchronized void record(final MigrationPhase phase, final String path, final long wallNanos,
+                                     final long cpuNanos, final long allocatedBytes) {
+        phases.computeIfAbsent(phase, p -> new Stats()).add(wallNanos, cpuNanos, allocatedBytes);
+        files.computeIfAbsent(path, p -> new Stats()).add(wallNanos, cpuNanos, allocatedBytes);
+    }
+
+    /**
+     * A running measurement of a phase, recorded on close.
+     */
+    public final class Measurement implements AutoCloseable {
+
+        private final MigrationPhase phase;
+        private final String path;
+        private final long wallStart = System.nanoTime();
+        private final long cpuStart = currentCpuNanos();
+        private final long allocationStart = currentAllocatedBytes();
+
+        private Measurement(final MigrationPhase phase, final String path) {
+            this.phase = phase;
+            this.path = path;
+        }
+
+        @Override
+        public void close() {
+            record(phase, path, System.nanoTime() - wallStart, currentCpuNanos() - cpuStart,
+                currentAllocatedBytes() - allocationStart);
+        }
+    }
+
+    private static final class Stats {
+
+        private int count;
+        private int tasks;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        private void add(final long wall, final long cpu, final long allocated) {
+            count += 1;
+            wallNanos += wall;
+            cpuNanos += cpu;
+            allocatedBytes += allocated;
+        }
+
+        private Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("count", count);
+            json.put("tasks", tasks);
+            json.put("wallMillis", wallNanos / 1_000_000.0);
+            json.put("cpuMillis", cpuNanos / 1_000_000.0);
+            json.put("allocatedBytes", allocatedBytes);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package gr.aueb.reactiveness.settings;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.util.ui.FormBuilder;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+
+/**
+ * The settings page of the plugin.
+ *
+ * @author taggelis
+ */
+public class ReactivenessConfigurable implements Configurable {
+
+    private JCheckBox instrumentChains;
+    private JCheckBox retainLifecycleTasks;
+    private JCheckBox shareClonedTasks;
+
+    @Nls
+    @Override
+    public String getDisplayName() {
+        return "Reactiveness";
+    }
+
+    @Nullable
+    @Override
+    public JComponent createComponent() {
+        instrumentChains = new JCheckBox("Record the latency of the generated Rx chains with RxTaskMetrics");
+        instrumentChains.setToolTipText("Queued, background and delivery time and the outcome of every migrated "
+            + "task, aggregated by a helper class that is generated next to the first migrated task. The chains "
+            + "that are kept across configuration changes are not recorded");
+        retainLifecycleTasks = new JCheckBox("Keep the tasks started from onCreate across configuration changes");
+        retainLifecycleTasks.setToolTipText("The chain is cached in a ViewModel of the Activity and a rotation "
+            + "runs onPreExecute and reattaches to its running or completed result instead of starting the task "
+            + "again");
+        shareClonedTasks = new JCheckBox("Extract the identical doInBackground methods of the tasks once");
+        shareClonedTasks.setToolTipText("The tasks whose background work differs only in names and literals call "
+            + "a single method of a generated SharedTasks class instead of a copy in every parent class");
+        return FormBuilder.createFormBuilder()
+            .addComponent(instrumentChains)
+            .addComponent(retainLifecycleTasks)
+            .addComponent(shareClonedTasks)
+            .addComponentFillVertically(new JPanel(), 0)
+            .getPanel();
+    }
+
+    @Override
+    public boolean isModified() {
+        return instrumentChains.isSelected() != ReactivenessSettings.getInstance().isInstrumentChains()
+            || retainLifecycleTasks.isSelected() != ReactivenessSettings.getInstance().isRetainLifecycleTasks()
+            || shareClonedTasks.isSelected() != ReactivenessSettings.getInstance().isShareClonedTasks();
+    }
+
+    @Override
+    public void apply() {
+        ReactivenessSettings.getInstance().setInstrumentChains(instrumentChains.isSelected());
+        ReactivenessSettings.getInstance().setRetainLifecycleTasks(retainLifecycleTasks.isSelected());
+        ReactivenessSettings.getInstance().setShareClonedTasks(shareClonedTasks.isSelected());
+    }
+
+    @Override
+    public void reset() {
+        instrumentChains.setSelected(ReactivenessSettings.getInstance().isInstrumentChains());
+        retainLifecycleTasks.setSelected(ReactivenessSettings.getInstance().isRetainLifecycleTasks());
+        shareClonedTasks.setSelected(ReactivenessSettings.getInstance().isShareClonedTasks());
+    }
+
+    @Override
+    public void disposeUIResources() {
+        instrumentChains = null;
+        retainLifecycleTasks = null;
+        shareClonedTasks = null;
+    }
+}
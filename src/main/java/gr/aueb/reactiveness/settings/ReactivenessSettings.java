@@ -0,0 +1,94 @@
+package gr.aueb.reactiveness.settings;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.util.xmlb.XmlSerializerUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The options of the generated Rx code.
+ *
+ * @author taggelis
+ */
+@State(name = "ReactivenessSettings", storages = @Storage("reactiveness.xml"))
+public class ReactivenessSettings implements PersistentStateComponent<ReactivenessSettings> {
+
+    private boolean instrumentChains;
+    private boolean retainLifecycleTasks;
+    private boolean shareClonedTasks;
+
+    /**
+     * Gets the application settings.
+     *
+     * @return the settings
+     */
+    public static ReactivenessSettings getInstance() {
+        return ServiceManager.getService(ReactivenessSettings.class);
+    }
+
+    /**
+     * Is instrument chains boolean.
+     *
+     * @return true if the generated chains record their latency through RxTaskMetrics
+     */
+    public boolean isInstrumentChains() {
+        return instrumentChains;
+    }
+
+    /**
+     * Sets instrument chains.
+     *
+     * @param instrumentChains the instrument chains
+     */
+    public void setInstrumentChains(final boolean instrumentChains) {
+        this.instrumentChains = instrumentChains;
+    }
+
+    /**
+     * Is retain lifecycle tasks boolean.
+     *
+     * @return true if the chains started from onCreate survive configuration changes
+     */
+    public boolean isRetainLifecycleTasks() {
+        return retainLifecycleTasks;
+    }
+
+    /**
+     * Sets retain lifecycle tasks.
+     *
+     * @param retainLifecycleTasks the retain lifecycle tasks
+     */
+    public void setRetainLifecycleTasks(final boolean retainLifecycleTasks) {
+        this.retainLifecycleTasks = retainLifecycleTasks;
+    }
+
+    /**
+     * Is share cloned tasks boolean.
+     *
+     * @return true if the identical doInBackground methods of the tasks are extracted once into SharedTasks
+     */
+    public boolean isShareClonedTasks() {
+        return shareClonedTasks;
+    }
+
+    /**
+     * Sets share cloned tasks.
+     *
+     * @param shareClonedTasks the share cloned tasks
+     */
+    public void setShareClonedTasks(final boolean shareClonedTasks) {
+        this.shareClonedTasks = shareClonedTasks;
+    }
+
+    @Override
+    public ReactivenessSettings getState() {
+        return this;
+    }
+
+    @Override
+    public void loadState(@NotNull final ReactivenessSettings state) {
+        XmlSerializerUtil.copyBean(state, this);
+    }
+}
@@ -118,6 +118,6 @@ public class AsyncTaskInstance {
             return false;
         }
         return Arrays.stream(asyncTask.getMethods())
-            .anyMatch(psiMethod -> psiMethod.getName().equals("onProgressUpdate"));
+            .anyMatch(psiMethod -> psiMethod.getName().equals("onPreExecute"));
     }
 }
@@ -1,6 +1,9 @@
 package gr.aueb.reactiveness.utils;
 
 
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.JavaRecursiveElementWalkingVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiClassType;
@@ -13,9 +16,13 @@ import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.PsiNewExpression;
 import com.intellij.psi.PsiReferenceList;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.FileBasedIndex;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -31,6 +38,26 @@ public final class ReactivenessUtils {
     }
 
 
+    /**
+     * Find all the java files of the project.
+     *
+     * @param project the project
+     * @return the virtual files
+     */
+    public static Collection<VirtualFile> findProjectJavaFiles(final Project project) {
+        return findJavaFiles(GlobalSearchScope.projectScope(project));
+    }
+
+    /**
+     * Find all the java files of the scope.
+     *
+     * @param scope the scope
+     * @return the virtual files
+     */
+    public static Collection<VirtualFile> findJavaFiles(final GlobalSearchScope scope) {
+        return FileBasedIndex.getInstance().getContainingFiles(FileTypeIndex.NAME, JavaFileType.INSTANCE, scope);
+    }
+
     /**
      * Find if extends async task boolean.
      *
@@ -157,7 +184,7 @@ public final class ReactivenessUtils {
     public static boolean searchIfCompositeDisposableExists(final PsiClass javaClass) {
         PsiField[] psiFilds = javaClass.getAllFields();
         for (PsiField field : psiFilds) {
-            if("CompositeDisposable".equals(field.getNameIdentifier().getText())){
+            if("compositeDisposable".equals(field.getNameIdentifier().getText())){
                 return true;
             }
         }
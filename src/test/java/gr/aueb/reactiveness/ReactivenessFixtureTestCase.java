@@ -0,0 +1,58 @@
+package gr.aueb.reactiveness;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.testFramework.LightProjectDescriptor;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import gr.aueb.reactiveness.benchmark.SyntheticProjectGenerator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A light test project with the android stubs that the migration resolves against.
+ *
+ * @author taggelis
+ */
+public abstract class ReactivenessFixtureTestCase extends LightCodeInsightFixtureTestCase {
+
+    @NotNull
+    @Override
+    protected LightProjectDescriptor getProjectDescriptor() {
+        return JAVA_8;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SyntheticProjectGenerator.androidStubs().values().forEach(myFixture::addClass);
+    }
+
+    /**
+     * Add the com.example.MainActivity class with the given members to the project.
+     *
+     * @param members the text of the members of the activity
+     * @return the activity class
+     */
+    protected PsiClass addActivity(final String members) {
+        return myFixture.addClass("package com.example;\n\n"
+            + "import android.app.Activity;\n"
+            + "import android.os.AsyncTask;\n"
+            + "import java.util.ArrayList;\n"
+            + "import java.util.List;\n"
+            + "import java.util.concurrent.ExecutionException;\n\n"
+            + "public class MainActivity extends Activity {\n"
+            + members
+            + "}\n");
+    }
+
+    /**
+     * Add the com.example.MainActivity class with an inner LoadTask of the given members to the project.
+     *
+     * @param taskMembers the text of the members of the task
+     * @return the task class
+     */
+    protected PsiClass addLoadTask(final String taskMembers) {
+        PsiClass activity = addActivity("    class LoadTask extends AsyncTask<String, Void, String> {\n"
+            + taskMembers
+            + "    }\n");
+        return activity.findInnerClassByName("LoadTask", false);
+    }
+}
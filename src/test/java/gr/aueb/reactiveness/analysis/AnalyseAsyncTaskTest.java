@@ -0,0 +1,69 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.psi.PsiClass;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+
+import java.util.List;
+
+/**
+ * @author taggelis
+ */
+public class AnalyseAsyncTaskTest extends ReactivenessFixtureTestCase {
+
+    private static final String LOAD_TASK = "    class LoadTask extends AsyncTask<String, Void, String> {\n"
+        + "        protected String doInBackground(String... urls) {\n"
+        + "            return urls[0];\n"
+        + "        }\n"
+        + "    }\n";
+
+    public void testBlockingGetAfterMainThreadCode() {
+        BlockingGet blockingGet = analyseLoad("        try {\n"
+            + "            setTitle(\"loading\");\n"
+            + "            String title = new LoadTask().execute(\"url\").get();\n"
+            + "            setTitle(title);\n"
+            + "        } catch (InterruptedException | ExecutionException e) {\n"
+            + "            setTitle(e.getMessage());\n"
+            + "        }\n");
+        assertFalse(blockingGet.getHotspotReason(), blockingGet.isHotspot());
+    }
+
+    public void testCodeBeforeGetUnderCatchException() {
+        BlockingGet blockingGet = analyseLoad("        try {\n"
+            + "            setTitle(\"loading\");\n"
+            + "            String title = new LoadTask().execute(\"url\").get();\n"
+            + "            setTitle(title);\n"
+            + "        } catch (Exception e) {\n"
+            + "            setTitle(e.getMessage());\n"
+            + "        }\n");
+        assertTrue(blockingGet.isHotspot());
+        assertTrue(blockingGet.getHotspotReason().contains("before get()"));
+    }
+
+    public void testCheckedExceptionBeforeGet() {
+        BlockingGet blockingGet = analyseLoad("        try {\n"
+            + "            Thread.sleep(10);\n"
+            + "            String title = new LoadTask().execute(\"url\").get();\n"
+            + "            setTitle(title);\n"
+            + "        } catch (InterruptedException | ExecutionException e) {\n"
+            + "            setTitle(e.getMessage());\n"
+            + "        }\n");
+        assertTrue(blockingGet.isHotspot());
+        assertEquals("the code before get() throws checked exceptions", blockingGet.getHotspotReason());
+    }
+
+    public void testGetOutsideTryStatement() {
+        BlockingGet blockingGet = analyseLoad("        try {\n"
+            + "            setTitle(\"loading\");\n"
+            + "        } finally {\n"
+            + "            new LoadTask().execute(\"url\");\n"
+            + "        }\n");
+        assertNull(blockingGet);
+    }
+
+    private BlockingGet analyseLoad(final String loadBody) {
+        PsiClass activity = addActivity("    void load() {\n" + loadBody + "    }\n" + LOAD_TASK);
+        List<BlockingGet> blockingGets = AnalyseAsyncTask.findBlockingGets(activity.findInnerClassByName("LoadTask",
+            false));
+        return blockingGets.isEmpty() ? null : blockingGets.get(0);
+    }
+}
@@ -0,0 +1,64 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.psi.PsiClass;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+import gr.aueb.reactiveness.analysis.FieldConfinement.Confinement;
+
+/**
+ * @author taggelis
+ */
+public class FieldConfinementTest extends ReactivenessFixtureTestCase {
+
+    public void testListFilledInBackgroundIsHandedOver() {
+        assertConfinement(Confinement.HANDED_OVER, addLoadTask(
+            "        private final List<String> names = new ArrayList<>();\n"
+                + "        protected String doInBackground(String... urls) {\n"
+                + "            names.add(urls[0]);\n"
+                + "            return urls[0];\n"
+                + "        }\n"
+                + "        protected void onPostExecute(String result) {\n"
+                + "            setTitle(result + names.size());\n"
+                + "        }\n"));
+    }
+
+    public void testUnwrittenStringIsReadOnly() {
+        assertConfinement(Confinement.READ_ONLY, addLoadTask(
+            "        private final String prefix = \"page \";\n"
+                + "        protected String doInBackground(String... urls) {\n"
+                + "            return prefix + urls[0];\n"
+                + "        }\n"
+                + "        protected void onPreExecute() {\n"
+                + "            setTitle(prefix);\n"
+                + "        }\n"));
+    }
+
+    public void testUnwrittenListOfBothThreadsIsUnsafe() {
+        PsiClass asyncTask = addLoadTask(
+            "        private final List<String> names = new ArrayList<>();\n"
+                + "        protected String doInBackground(String... urls) {\n"
+                + "            names.add(urls[0]);\n"
+                + "            return urls[0];\n"
+                + "        }\n"
+                + "        protected void onPreExecute() {\n"
+                + "            names.clear();\n"
+                + "        }\n");
+        assertConfinement(Confinement.UNSAFE, asyncTask);
+        FieldConfinement confinement = FieldConfinement.analyse(asyncTask, TaskConstructor.analyse(asyncTask));
+        assertTrue(confinement.getUnsafeReasons().get(asyncTask.findFieldByName("names", false))
+            .contains("mutable object"));
+    }
+
+    public void testFieldOfBackgroundOnlyIsConfined() {
+        assertConfinement(Confinement.BACKGROUND_ONLY, addLoadTask(
+            "        private int attempts;\n"
+                + "        protected String doInBackground(String... urls) {\n"
+                + "            attempts++;\n"
+                + "            return urls[0] + attempts;\n"
+                + "        }\n"));
+    }
+
+    private static void assertConfinement(final Confinement expected, final PsiClass asyncTask) {
+        FieldConfinement confinement = FieldConfinement.analyse(asyncTask, TaskConstructor.analyse(asyncTask));
+        assertEquals(expected, confinement.getConfinement(asyncTask.getFields()[0]));
+    }
+}
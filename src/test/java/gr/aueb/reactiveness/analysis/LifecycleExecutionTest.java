@@ -0,0 +1,106 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+import gr.aueb.reactiveness.actions.RxJavaAction;
+import gr.aueb.reactiveness.report.MigrationReport;
+import gr.aueb.reactiveness.settings.ReactivenessSettings;
+
+/**
+ * @author taggelis
+ */
+public class LifecycleExecutionTest extends ReactivenessFixtureTestCase {
+
+    private static final String LOAD_TASK = "    private class LoadTask extends AsyncTask<String, Void, String> {\n"
+        + "        protected void onPreExecute() {\n"
+        + "            setTitle(\"loading\");\n"
+        + "        }\n"
+        + "        protected String doInBackground(String... urls) {\n"
+        + "            return urls[0];\n"
+        + "        }\n"
+        + "        protected void onPostExecute(String result) {\n"
+        + "            setTitle(result);\n"
+        + "        }\n"
+        + "    }\n";
+
+    private final MigrationReport report = new MigrationReport();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myFixture.addClass("package androidx.appcompat.app;\n\n"
+            + "public class AppCompatActivity extends android.app.Activity {\n"
+            + "}\n");
+        ReactivenessSettings.getInstance().setRetainLifecycleTasks(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            ReactivenessSettings.getInstance().setRetainLifecycleTasks(false);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testTaskOfOnCreateIsRetained() {
+        String migrated = migrate("    protected void onCreate(android.os.Bundle state) {\n"
+            + "        new LoadTask().execute(\"url\");\n"
+            + "    }\n");
+        assertTrue(migrated.contains("private final CompositeDisposable compositeDisposable = "
+            + "new CompositeDisposable();"));
+        assertTrue(migrated.contains("private static String doLoadTask(String... urls)"));
+        // every instance of the Activity shows the pre execute state, the first one also starts the chain
+        assertTrue(migrated.contains("RetainedTasks d2Retained = new ViewModelProvider(this).get(RetainedTasks.class); "
+            + "loadTaskPreExecute(); if (d2Retained.loadTaskD2 == null) { d2Retained.loadTaskD2 = "));
+        assertEquals(1, report.getFindings(MigrationReport.RETAINED_TASK));
+        assertEquals(0, report.getFindings(MigrationReport.RESTARTED_TASK));
+    }
+
+    public void testArgumentOfAnActivityFieldIsNotRetained() {
+        String migrated = migrate("    private String url = \"url\";\n"
+            + "    protected void onCreate(android.os.Bundle state) {\n"
+            + "        new LoadTask().execute(url);\n"
+            + "    }\n");
+        assertFalse(migrated.contains("RetainedTasks"));
+        assertEquals(0, report.getFindings(MigrationReport.RETAINED_TASK));
+        assertEquals(1, report.getFindings(MigrationReport.RESTARTED_TASK));
+    }
+
+    public void testArgumentOfAnActivityMethodIsNotRetained() {
+        String migrated = migrate("    protected void onCreate(android.os.Bundle state) {\n"
+            + "        new LoadTask().execute(getUrl());\n"
+            + "    }\n"
+            + "    String getUrl() {\n"
+            + "        return \"url\";\n"
+            + "    }\n");
+        assertFalse(migrated.contains("RetainedTasks"));
+        assertEquals(1, report.getFindings(MigrationReport.RESTARTED_TASK));
+    }
+
+    public void testTaskOfOnResumeIsNotRetained() {
+        // onResume runs again when the Activity comes back to the foreground, without a configuration change
+        String migrated = migrate("    protected void onResume() {\n"
+            + "        new LoadTask().execute(\"url\");\n"
+            + "    }\n");
+        assertFalse(migrated.contains("RetainedTasks"));
+        assertTrue(migrated.contains("loadTaskPreExecute(); Disposable d2 = Single.fromCallable("));
+        assertEquals(0, report.getFindings(MigrationReport.RETAINED_TASK));
+        assertEquals(0, report.getFindings(MigrationReport.RESTARTED_TASK));
+    }
+
+    private String migrate(final String members) {
+        PsiClass activity = myFixture.addClass("package com.example;\n\n"
+            + "import android.os.AsyncTask;\n"
+            + "import androidx.appcompat.app.AppCompatActivity;\n\n"
+            + "public class MainActivity extends AppCompatActivity {\n"
+            + members
+            + LOAD_TASK
+            + "}\n");
+        PsiFile file = activity.getContainingFile();
+        new RxJavaAction().migrate(getProject(), GlobalSearchScope.fileScope(file), report);
+        return file.getText().replaceAll("\\s+", " ");
+    }
+}
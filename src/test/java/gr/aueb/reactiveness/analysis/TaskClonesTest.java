@@ -0,0 +1,87 @@
+package gr.aueb.reactiveness.analysis;
+
+import com.intellij.psi.PsiClass;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author taggelis
+ */
+public class TaskClonesTest extends ReactivenessFixtureTestCase {
+
+    public void testDifferentLiteralsBecomeParameters() {
+        List<TaskClones> groups = detect("\"a\"", "\"x\"", "\"a\"", "\"y\"");
+        assertEquals(1, groups.size());
+        TaskClones clones = groups.get(0);
+        assertEquals(Collections.singletonList(0), clones.getVaryingLiterals());
+        assertEquals(Collections.singletonList("\"y\""), clones.getVaryingLiterals(clones.getTasks().get(1)));
+    }
+
+    public void testDifferentCaseLabelsAreNotGrouped() {
+        assertEmpty(detect("\"a\"", "\"x\"", "\"b\"", "\"x\""));
+    }
+
+    public void testCaseLabelOfLocalConstantIsNotGrouped() {
+        PsiClass activity = addActivity(constantTask("FirstTask", "\"a\"") + constantTask("SecondTask", "\"b\""));
+        assertEmpty(TaskClones.detect(Arrays.asList(activity.getInnerClasses())));
+    }
+
+    public void testDifferentNarrowedConstantsAreNotGrouped() {
+        PsiClass activity = addActivity(narrowedTask("FirstTask", "0x1F") + narrowedTask("SecondTask", "0x2F"));
+        assertEmpty(TaskClones.detect(Arrays.asList(activity.getInnerClasses())));
+    }
+
+    public void testSameNarrowedConstantsAreGrouped() {
+        PsiClass activity = addActivity(narrowedTask("FirstTask", "0x1F") + narrowedTask("SecondTask", "0x1F"));
+        List<TaskClones> groups = TaskClones.detect(Arrays.asList(activity.getInnerClasses()));
+        assertEquals(1, groups.size());
+        assertEmpty(groups.get(0).getVaryingLiterals());
+    }
+
+    private List<TaskClones> detect(final String firstCase, final String firstResult, final String secondCase,
+                                    final String secondResult) {
+        PsiClass activity = addActivity(switchTask("FirstTask", firstCase, firstResult)
+            + switchTask("SecondTask", secondCase, secondResult));
+        return TaskClones.detect(Arrays.asList(activity.getInnerClasses()));
+    }
+
+    private static String switchTask(final String name, final String caseLabel, final String result) {
+        return "    class " + name + " extends AsyncTask<String, Void, String> {\n"
+            + "        protected String doInBackground(String... urls) {\n"
+            + "            switch (urls[0]) {\n"
+            + "                case " + caseLabel + ":\n"
+            + "                    return " + result + ";\n"
+            + "                default:\n"
+            + "                    return urls[0];\n"
+            + "            }\n"
+            + "        }\n"
+            + "    }\n";
+    }
+
+    private static String narrowedTask(final String name, final String constant) {
+        return "    class " + name + " extends AsyncTask<String, Void, String> {\n"
+            + "        protected String doInBackground(String... urls) {\n"
+            + "            byte[] header = new byte[]{" + constant + ", 2};\n"
+            + "            byte mask = " + constant + ";\n"
+            + "            return urls[0] + header[0] + mask;\n"
+            + "        }\n"
+            + "    }\n";
+    }
+
+    private static String constantTask(final String name, final String constant) {
+        return "    class " + name + " extends AsyncTask<String, Void, String> {\n"
+            + "        protected String doInBackground(String... urls) {\n"
+            + "            final String kind = " + constant + ";\n"
+            + "            switch (urls[0]) {\n"
+            + "                case kind:\n"
+            + "                    return kind;\n"
+            + "                default:\n"
+            + "                    return urls[0];\n"
+            + "            }\n"
+            + "        }\n"
+            + "    }\n";
+    }
+}
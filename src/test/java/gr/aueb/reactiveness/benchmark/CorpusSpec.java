@@ -0,0 +1,187 @@
+package gr.aueb.reactiveness.benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The shape of a synthetic Android project generated for benchmarking.
+ *
+ * @author taggelis
+ */
+public class CorpusSpec {
+
+    private final int files;
+    private int taskFilePercent = 20;
+    private int innerTasksPerFile = 1;
+    private int anonymousTasksPerFile = 1;
+    private int standaloneTasks;
+    private int progressUpdatePercent = 50;
+    private List<ExecutePattern> executePatterns = Arrays.asList(ExecutePattern.values());
+    private long seed = 42;
+
+    /**
+     * Instantiates a new Corpus spec with the default shape.
+     *
+     * @param files the number of activity files
+     */
+    public CorpusSpec(final int files) {
+        this.files = files;
+        this.standaloneTasks = files / 100;
+    }
+
+    /**
+     * Gets the number of activity files.
+     *
+     * @return the files
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * Gets the percentage of activity files that host asyncTasks.
+     *
+     * @return the task file percent
+     */
+    public int getTaskFilePercent() {
+        return taskFilePercent;
+    }
+
+    /**
+     * Sets the percentage of activity files that host asyncTasks.
+     *
+     * @param taskFilePercent the task file percent
+     */
+    public void setTaskFilePercent(final int taskFilePercent) {
+        this.taskFilePercent = taskFilePercent;
+    }
+
+    /**
+     * Gets the inner asyncTasks of every hosting file.
+     *
+     * @return the inner tasks per file
+     */
+    public int getInnerTasksPerFile() {
+        return innerTasksPerFile;
+    }
+
+    /**
+     * Sets the inner asyncTasks of every hosting file.
+     *
+     * @param innerTasksPerFile the inner tasks per file
+     */
+    public void setInnerTasksPerFile(final int innerTasksPerFile) {
+        this.innerTasksPerFile = innerTasksPerFile;
+    }
+
+    /**
+     * Gets the anonymous asyncTasks of every hosting file.
+     *
+     * @return the anonymous tasks per file
+     */
+    public int getAnonymousTasksPerFile() {
+        return anonymousTasksPerFile;
+    }
+
+    /**
+     * Sets the anonymous asyncTasks of every hosting file.
+     *
+     * @param anonymousTasksPerFile the anonymous tasks per file
+     */
+    public void setAnonymousTasksPerFile(final int anonymousTasksPerFile) {
+        this.anonymousTasksPerFile = anonymousTasksPerFile;
+    }
+
+    /**
+     * Gets the number of standalone asyncTask files.
+     *
+     * @return the standalone tasks
+     */
+    public int getStandaloneTasks() {
+        return standaloneTasks;
+    }
+
+    /**
+     * Sets the number of standalone asyncTask files.
+     *
+     * @param standaloneTasks the standalone tasks
+     */
+    public void setStandaloneTasks(final int standaloneTasks) {
+        this.standaloneTasks = standaloneTasks;
+    }
+
+    /**
+     * Gets the percentage of tasks that publish progress updates.
+     *
+     * @return the progress update percent
+     */
+    public int getProgressUpdatePercent() {
+        return progressUpdatePercent;
+    }
+
+    /**
+     * Sets the percentage of tasks that publish progress updates.
+     *
+     * @param progressUpdatePercent the progress update percent
+     */
+    public void setProgressUpdatePercent(final int progressUpdatePercent) {
+        this.progressUpdatePercent = progressUpdatePercent;
+    }
+
+    /**
+     * Gets the execute patterns, used in turn by the generated tasks.
+     *
+     * @return the execute patterns
+     */
+    public List<ExecutePattern> getExecutePatterns() {
+        return Collections.unmodifiableList(executePatterns);
+    }
+
+    /**
+     * Sets the execute patterns, used in turn by the generated tasks.
+     *
+     * @param executePatterns the execute patterns
+     */
+    public void setExecutePatterns(final List<ExecutePattern> executePatterns) {
+        this.executePatterns = executePatterns;
+    }
+
+    /**
+     * Gets the seed of the random generator.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the random generator.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * The spec as a json tree.
+     *
+     * @return the json tree
+     */
+    public Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("files", files);
+        json.put("taskFilePercent", taskFilePercent);
+        json.put("innerTasksPerFile", innerTasksPerFile);
+        json.put("anonymousTasksPerFile", anonymousTasksPerFile);
+        json.put("standaloneTasks", standaloneTasks);
+        json.put("progressUpdatePercent", progressUpdatePercent);
+        json.put("executePatterns", executePatterns);
+        json.put("seed", seed);
+        return json;
+    }
+}
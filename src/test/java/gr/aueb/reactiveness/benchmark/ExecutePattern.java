@@ -0,0 +1,21 @@
+package gr.aueb.reactiveness.benchmark;
+
+/**
+ * The ways a generated asyncTask is executed.
+ *
+ * @author taggelis
+ */
+public enum ExecutePattern {
+    /**
+     * Task task = new Task(); task.execute(..).
+     */
+    LOCAL_VARIABLE,
+    /**
+     * new Task().execute(..).
+     */
+    DIRECT,
+    /**
+     * new Task().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, ..).
+     */
+    EXECUTOR
+}
@@ -0,0 +1,120 @@
+package gr.aueb.reactiveness.benchmark;
+
+import com.google.gson.GsonBuilder;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScopesCore;
+import com.intellij.testFramework.fixtures.JavaCodeInsightFixtureTestCase;
+import gr.aueb.reactiveness.actions.RxJavaAction;
+import gr.aueb.reactiveness.report.MigrationPhase;
+import gr.aueb.reactiveness.report.MigrationReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Generates synthetic corpora in the source root of the test project and measures the discovery, analysis and
+ * rewrite throughput and the memory of a migration run on each one. The corpus sizes are read from the
+ * {@code reactiveness.benchmark.files} system property, comma separated, and the results of every corpus are
+ * written as json under the {@code reactiveness.benchmark.output} directory, so that runs of different plugin
+ * builds can be compared.
+ *
+ * @author taggelis
+ */
+public class MigrationBenchmarkTest extends JavaCodeInsightFixtureTestCase {
+
+    private static final String FILES_PROPERTY = "reactiveness.benchmark.files";
+    private static final String OUTPUT_PROPERTY = "reactiveness.benchmark.output";
+
+    public void testMigrationBenchmark() throws IOException {
+        for (String files : System.getProperty(FILES_PROPERTY, "100").split(",")) {
+            CorpusSpec spec = new CorpusSpec(Integer.parseInt(files.trim()));
+            File corpusRoot = new File(myFixture.getTempDirPath(), "files-" + spec.getFiles());
+            new SyntheticProjectGenerator(spec).generate(corpusRoot.toPath());
+            VirtualFile corpusDirectory = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(corpusRoot);
+            assertNotNull("Generated corpus not found " + corpusRoot, corpusDirectory);
+            VfsUtil.markDirtyAndRefresh(false, true, true, corpusDirectory);
+
+            MigrationReport report = measure(spec, corpusDirectory);
+            assertTrue("No task of the corpus was migrated", report.getCounter(MigrationReport.MIGRATED_TASKS) > 0);
+            // every corpus has its own android stubs
+            WriteAction.run(() -> corpusDirectory.delete(this));
+        }
+    }
+
+    private MigrationReport measure(final CorpusSpec spec, final VirtualFile corpusDirectory) throws IOException {
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long heapBefore = usedHeap();
+
+        MigrationReport report = new MigrationReport();
+        new RxJavaAction().migrate(getProject(),
+            GlobalSearchScopesCore.directoryScope(getProject(), corpusDirectory, true), report);
+        long wallNanos = report.getElapsedNanos();
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("corpus", spec.toJson());
+        json.put("wallMillis", wallNanos / 1_000_000);
+        json.put("discoveryFilesPerSecond", throughput(report.getCounter(MigrationReport.FILES), report,
+            MigrationPhase.FILE_ENUMERATION, MigrationPhase.ANONYMOUS_SEARCH, MigrationPhase.INNER_CLASS_SEARCH));
+        json.put("analysisTasksPerSecond", throughput(report.getCounter(MigrationReport.INNER_TASKS), report,
+            MigrationPhase.VALIDATION, MigrationPhase.REFERENCE_SEARCH));
+        json.put("rewriteTasksPerSecond", throughput(report.getCounter(MigrationReport.MIGRATED_TASKS), report,
+            MigrationPhase.ANONYMOUS_CONVERSION, MigrationPhase.PSI_REWRITE, MigrationPhase.REFORMAT,
+            MigrationPhase.OPTIMIZE_IMPORTS));
+
+        Map<String, Object> memory = new LinkedHashMap<>();
+        memory.put("heapBeforeBytes", heapBefore);
+        memory.put("heapAfterBytes", usedHeap());
+        memory.put("peakHeapBytes", heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+        long allocated = 0;
+        for (MigrationPhase phase : MigrationPhase.values()) {
+            allocated += report.getAllocatedBytes(phase);
+        }
+        memory.put("allocatedBytes", allocated);
+        json.put("memory", memory);
+        json.put("report", report.toJson(getProject(), wallNanos));
+        writeResult(spec, json);
+        return report;
+    }
+
+    private static double throughput(final int items, final MigrationReport report, final MigrationPhase... phases) {
+        long nanos = 0;
+        for (MigrationPhase phase : phases) {
+            nanos += report.getWallNanos(phase);
+        }
+        return nanos == 0 ? 0 : items * 1_000_000_000.0 / nanos;
+    }
+
+    private static void writeResult(final CorpusSpec spec, final Map<String, Object> json) throws IOException {
+        File directory = new File(System.getProperty(OUTPUT_PROPERTY, "build/reactiveness-benchmark"));
+        File resultFile = new File(directory, "benchmark-" + spec.getFiles() + "-"
+            + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+        Files.createDirectories(directory.toPath());
+        Files.write(resultFile.toPath(), new GsonBuilder().setPrettyPrinting().serializeNulls().create()
+            .toJson(json).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .collect(Collectors.toList());
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
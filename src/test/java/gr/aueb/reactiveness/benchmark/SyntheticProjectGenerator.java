@@ -0,0 +1,234 @@
+package gr.aueb.reactiveness.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates a synthetic Android project with the shape of a {@link CorpusSpec}. Activities host inner and
+ * anonymous asyncTasks that are executed with the configured patterns, the rest of the files are plain classes,
+ * and minimal android stubs are written so that the generated code resolves.
+ *
+ * @author taggelis
+ */
+public class SyntheticProjectGenerator {
+
+    private static final int FILES_PER_PACKAGE = 100;
+
+    private final CorpusSpec spec;
+    private final Random random;
+    private int executions;
+
+    /**
+     * Instantiates a new Synthetic project generator.
+     *
+     * @param spec the corpus spec
+     */
+    public SyntheticProjectGenerator(final CorpusSpec spec) {
+        this.spec = spec;
+        this.random = new Random(spec.getSeed());
+    }
+
+    /**
+     * Generate the corpus under the source root.
+     *
+     * @param sourceRoot the source root
+     * @throws IOException if a file cannot be written
+     */
+    public void generate(final Path sourceRoot) throws IOException {
+        writeAndroidStubs(sourceRoot);
+        for (int i = 0; i < spec.getFiles(); i++) {
+            String packageName = "bench.p" + i / FILES_PER_PACKAGE;
+            boolean hostsTasks = random.nextInt(100) < spec.getTaskFilePercent();
+            String className = (hostsTasks ? "Screen" : "Plain") + i + (hostsTasks ? "Activity" : "");
+            write(sourceRoot, packageName, className,
+                hostsTasks ? activity(packageName, className, i) : plainClass(packageName, className, i));
+        }
+        for (int i = 0; i < spec.getStandaloneTasks(); i++) {
+            String className = "Standalone" + i + "Task";
+            write(sourceRoot, "bench.tasks", className, standaloneTask(className, i));
+        }
+    }
+
+    private String activity(final String packageName, final String className, final int index) {
+        StringBuilder executeStatements = new StringBuilder();
+        StringBuilder innerClasses = new StringBuilder();
+        for (int t = 0; t < spec.getInnerTasksPerFile(); t++) {
+            String taskName = "Load" + index + "Task" + t;
+            executeStatements.append(executeStatement(taskName, t));
+            innerClasses.append(innerTask(taskName, index, random.nextInt(100) < spec.getProgressUpdatePercent()));
+        }
+        for (int t = 0; t < spec.getAnonymousTasksPerFile(); t++) {
+            executeStatements.append(anonymousTask(index, t));
+        }
+        return "package " + packageName + ";\n\n"
+            + "import android.app.Activity;\n"
+            + "import android.os.AsyncTask;\n"
+            + "import android.os.Bundle;\n\n"
+            + "public class " + className + " extends Activity {\n\n"
+            + "    private String title = \"" + className + "\";\n\n"
+            + "    @Override\n"
+            + "    protected void onCreate(Bundle savedInstanceState) {\n"
+            + "        super.onCreate(savedInstanceState);\n"
+            + executeStatements
+            + "    }\n\n"
+            + "    private String describe(int value) {\n"
+            + "        return title + \":\" + value;\n"
+            + "    }\n"
+            + innerClasses
+            + "}\n";
+    }
+
+    private String executeStatement(final String taskName, final int index) {
+        ExecutePattern pattern = spec.getExecutePatterns()
+            .get(executions++ % spec.getExecutePatterns().size());
+        String argument = "describe(" + index + ")";
+        switch (pattern) {
+            case LOCAL_VARIABLE:
+                String variable = Character.toLowerCase(taskName.charAt(0)) + taskName.substring(1);
+                return "        " + taskName + " " + variable + " = new " + taskName + "();\n"
+                    + "        " + variable + ".execute(" + argument + ");\n";
+            case EXECUTOR:
+                return "        new " + taskName + "().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "
+                    + argument + ");\n";
+            case DIRECT:
+            default:
+                return "        new " + taskName + "().execute(" + argument + ");\n";
+        }
+    }
+
+    private String innerTask(final String taskName, final int index, final boolean progressUpdate) {
+        return "\n"
+            + "    private class " + taskName + " extends AsyncTask<String, String, String> {\n\n"
+            + "        private int attempts = " + index % 7 + ";\n\n"
+            + "        @Override\n"
+            + "        protected void onPreExecute() {\n"
+            + "            setTitle(\"loading\");\n"
+            + "        }\n\n"
+            + "        @Override\n"
+            + "        protected String doInBackground(String... params) {\n"
+            + "            StringBuilder result = new StringBuilder();\n"
+            + "            for (String param : params) {\n"
+            + "                for (int i = 0; i < attempts; i++) {\n"
+            + "                    result.append(param.hashCode() * i);\n"
+            + (progressUpdate ? "                    publishProgress(param);\n" : "")
+            + "                }\n"
+            + "            }\n"
+            + "            return result.toString();\n"
+            + "        }\n\n"
+            + (progressUpdate
+            ? "        @Override\n"
+            + "        protected void onProgressUpdate(String... values) {\n"
+            + "            setTitle(values[0]);\n"
+            + "        }\n\n" : "")
+            + "        @Override\n"
+            + "        protected void onPostExecute(String result) {\n"
+            + "            setTitle(result);\n"
+            + "        }\n"
+            + "    }\n";
+    }
+
+    private String anonymousTask(final int index, final int task) {
+        return "        new AsyncTask<String, Void, String>() {\n"
+            + "            @Override\n"
+            + "            protected String doInBackground(String... params) {\n"
+            + "                return params[0] + " + (index * 31 + task) + ";\n"
+            + "            }\n\n"
+            + "            @Override\n"
+            + "            protected void onPostExecute(String result) {\n"
+            + "                setTitle(result);\n"
+            + "            }\n"
+            + "        }.execute(describe(" + task + "));\n";
+    }
+
+    private String plainClass(final String packageName, final String className, final int index) {
+        return "package " + packageName + ";\n\n"
+            + "import java.util.ArrayList;\n"
+            + "import java.util.List;\n\n"
+            + "public class " + className + " {\n\n"
+            + "    private final List<String> values = new ArrayList<>();\n\n"
+            + "    public void add(String value) {\n"
+            + "        values.add(value + " + index + ");\n"
+            + "    }\n\n"
+            + "    public int total() {\n"
+            + "        int total = 0;\n"
+            + "        for (String value : values) {\n"
+            + "            total += value.length();\n"
+            + "        }\n"
+            + "        return total;\n"
+            + "    }\n"
+            + "}\n";
+    }
+
+    private String standaloneTask(final String className, final int index) {
+        return "package bench.tasks;\n\n"
+            + "import android.os.AsyncTask;\n\n"
+            + "public class " + className + " extends AsyncTask<Integer, Void, Integer> {\n\n"
+            + "    @Override\n"
+            + "    protected Integer doInBackground(Integer... params) {\n"
+            + "        return params[0] * " + index + ";\n"
+            + "    }\n"
+            + "}\n";
+    }
+
+    /**
+     * Gets the minimal android stubs that the generated code and the tests of the migration resolve against.
+     *
+     * @return the text of every stub class by its qualified name
+     */
+    public static Map<String, String> androidStubs() {
+        Map<String, String> stubs = new LinkedHashMap<>();
+        stubs.put("android.os.Bundle", "package android.os;\n\npublic class Bundle {\n}\n");
+        stubs.put("android.app.Activity", "package android.app;\n\n"
+            + "import android.os.Bundle;\n\n"
+            + "public class Activity {\n"
+            + "    protected void onCreate(Bundle savedInstanceState) {\n    }\n\n"
+            + "    protected void onDestroy() {\n    }\n\n"
+            + "    public boolean isFinishing() {\n        return false;\n    }\n\n"
+            + "    public void setTitle(CharSequence title) {\n    }\n"
+            + "}\n");
+        stubs.put("android.os.AsyncTask", "package android.os;\n\n"
+            + "import java.util.concurrent.ExecutionException;\n"
+            + "import java.util.concurrent.Executor;\n"
+            + "import java.util.concurrent.TimeUnit;\n"
+            + "import java.util.concurrent.TimeoutException;\n\n"
+            + "public abstract class AsyncTask<Params, Progress, Result> {\n"
+            + "    public static final Executor THREAD_POOL_EXECUTOR = Runnable::run;\n\n"
+            + "    protected abstract Result doInBackground(Params... params);\n\n"
+            + "    protected void onPreExecute() {\n    }\n\n"
+            + "    protected void onPostExecute(Result result) {\n    }\n\n"
+            + "    protected void onProgressUpdate(Progress... values) {\n    }\n\n"
+            + "    protected final void publishProgress(Progress... values) {\n    }\n\n"
+            + "    public final AsyncTask<Params, Progress, Result> execute(Params... params) {\n"
+            + "        return this;\n    }\n\n"
+            + "    public final AsyncTask<Params, Progress, Result> executeOnExecutor(Executor exec,"
+            + " Params... params) {\n"
+            + "        return this;\n    }\n\n"
+            + "    public final Result get() throws InterruptedException, ExecutionException {\n"
+            + "        return null;\n    }\n\n"
+            + "    public final Result get(long timeout, TimeUnit unit) throws InterruptedException,"
+            + " ExecutionException, TimeoutException {\n"
+            + "        return null;\n    }\n"
+            + "}\n");
+        return stubs;
+    }
+
+    private void writeAndroidStubs(final Path sourceRoot) throws IOException {
+        for (Map.Entry<String, String> stub : androidStubs().entrySet()) {
+            int separator = stub.getKey().lastIndexOf('.');
+            write(sourceRoot, stub.getKey().substring(0, separator), stub.getKey().substring(separator + 1),
+                stub.getValue());
+        }
+    }
+
+    private static void write(final Path sourceRoot, final String packageName, final String className,
+                              final String text) throws IOException {
+        Path directory = sourceRoot.resolve(packageName.replace('.', '/'));
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(className + ".java"), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
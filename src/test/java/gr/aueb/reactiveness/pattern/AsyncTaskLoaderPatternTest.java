@@ -0,0 +1,55 @@
+package gr.aueb.reactiveness.pattern;
+
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+import gr.aueb.reactiveness.report.MigrationReport;
+
+/**
+ * @author taggelis
+ */
+public class AsyncTaskLoaderPatternTest extends ReactivenessFixtureTestCase {
+
+    public void testLoaderBecomesAMaybeThatDeliversNull() {
+        PsiClass activity = myFixture.addClass("package com.example;\n\n"
+            + "import android.app.Activity;\n\n"
+            + "public class MainActivity extends Activity implements LoaderManager.LoaderCallbacks<String> {\n"
+            + "    protected void onCreate(android.os.Bundle state) {\n"
+            + "        getLoaderManager().initLoader(0, null, this);\n"
+            + "    }\n"
+            + "    public Loader<String> onCreateLoader(int id, android.os.Bundle args) {\n"
+            + "        return new TextLoader(this);\n"
+            + "    }\n"
+            + "    public void onLoadFinished(Loader<String> loader, String text) {\n"
+            + "        setTitle(text);\n"
+            + "    }\n"
+            + "    public void onLoaderReset(Loader<String> loader) {\n"
+            + "    }\n"
+            + "    static class TextLoader extends AsyncTaskLoader<String> {\n"
+            + "        TextLoader(Activity activity) {\n"
+            + "            super(activity);\n"
+            + "        }\n"
+            + "        protected void onStartLoading() {\n"
+            + "            forceLoad();\n"
+            + "        }\n"
+            + "        public String loadInBackground() {\n"
+            + "            return null;\n"
+            + "        }\n"
+            + "    }\n"
+            + "}\n");
+        MigrationReport report = new MigrationReport();
+        new LegacyPatternMigration(report).migrate(JavaPsiFacade.getElementFactory(getProject()), activity);
+
+        String migrated = activity.getContainingFile().getText().replaceAll("\\s+", " ");
+        assertEquals(1, report.getCounter(MigrationReport.MIGRATED_PATTERNS));
+        assertTrue(migrated.contains("compositeDisposable.add(Maybe.fromCallable(() -> "
+            + "new TextLoader(this).loadInBackground())"));
+        assertTrue(migrated.contains(".subscribe(text -> textLoaderLoadFinished(text), textLoaderError -> { "
+            + "throw new IllegalStateException(\"TextLoader failed to load\", textLoaderError); }, "
+            + "() -> textLoaderLoadFinished(null)))"));
+        assertTrue(migrated.contains("private void textLoaderLoadFinished(String text)"));
+        assertFalse(migrated.contains("onCreateLoader"));
+        // the loader manager kept the loader across configuration changes, the chain does not
+        assertEquals(1, report.getFindings(MigrationReport.RESTARTED_TASK));
+    }
+}
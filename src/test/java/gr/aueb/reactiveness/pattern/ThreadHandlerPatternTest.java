@@ -0,0 +1,90 @@
+package gr.aueb.reactiveness.pattern;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+
+import java.util.List;
+
+/**
+ * @author taggelis
+ */
+public class ThreadHandlerPatternTest extends ReactivenessFixtureTestCase {
+
+    public void testMethodReferenceRunnable() {
+        assertTrue(rewrite("new Thread(this::load).start();").contains("Completable.fromAction(this::load)"));
+    }
+
+    public void testLambdaRunnable() {
+        assertTrue(rewrite("new Thread(() -> load()).start();").contains("Completable.fromAction(() -> load())"));
+    }
+
+    public void testRunnableVariable() {
+        assertTrue(rewrite("Runnable work = this::load;\n        new Thread(work).start();")
+            .contains("Completable.fromAction(work::run)"));
+    }
+
+    public void testNamedThreadIsRejected() {
+        PsiClass worker = addWorker("new Thread(this::load, \"loader\").start();");
+        ThreadHandlerPattern pattern = new ThreadHandlerPattern();
+        List<PsiElement> occurrences = pattern.detect(worker);
+        assertEquals(1, occurrences.size());
+        assertNotNull(pattern.validate(occurrences.get(0)));
+    }
+
+    public void testHandlerOfOnCreateReceivesTheCompletion() {
+        PsiClass activity = addActivity("    protected void onCreate(android.os.Bundle state) {\n"
+            + "        android.os.Handler handler = new android.os.Handler();\n"
+            + "        new Thread(() -> {\n"
+            + "            load();\n"
+            + "            handler.post(this::show);\n"
+            + "        }).start();\n"
+            + "    }\n"
+            + "    void load() {\n"
+            + "    }\n"
+            + "    void show() {\n"
+            + "    }\n");
+        ThreadHandlerPattern pattern = new ThreadHandlerPattern();
+        List<PsiElement> occurrences = pattern.detect(activity);
+        assertEquals(1, occurrences.size());
+        assertNull(pattern.validate(occurrences.get(0)));
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> pattern
+            .rewrite(JavaPsiFacade.getElementFactory(getProject()), activity, occurrences.get(0)));
+        String rewritten = activity.getContainingFile().getText();
+        assertTrue(rewritten.contains(".observeOn(AndroidSchedulers.mainThread())\n.subscribe(this::show)"));
+    }
+
+    public void testHandlerOfTheWorkIsNotTheMainThread() {
+        // a Handler without a looper that the thread creates belongs to the thread, so the post stays in the work
+        String rewritten = rewrite("new Thread(() -> {\n"
+            + "            load();\n"
+            + "            new android.os.Handler().post(this::load);\n"
+            + "        }).start();");
+        assertTrue(rewritten.contains("new android.os.Handler().post(this::load);"));
+        assertFalse(rewritten.contains("observeOn"));
+    }
+
+    private String rewrite(final String startStatements) {
+        PsiClass worker = addWorker(startStatements);
+        ThreadHandlerPattern pattern = new ThreadHandlerPattern();
+        List<PsiElement> occurrences = pattern.detect(worker);
+        assertEquals(1, occurrences.size());
+        assertNull(pattern.validate(occurrences.get(0)));
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> pattern
+            .rewrite(JavaPsiFacade.getElementFactory(getProject()), worker, occurrences.get(0)));
+        return worker.getContainingFile().getText();
+    }
+
+    private PsiClass addWorker(final String startStatements) {
+        return myFixture.addClass("package com.example;\n\n"
+            + "public class Worker {\n"
+            + "    void start() {\n"
+            + "        " + startStatements + "\n"
+            + "    }\n\n"
+            + "    void load() {\n"
+            + "    }\n"
+            + "}\n");
+    }
+}
@@ -0,0 +1,126 @@
+package gr.aueb.reactiveness.preview;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+import gr.aueb.reactiveness.actions.RxJavaAction;
+import gr.aueb.reactiveness.report.MigrationReport;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author taggelis
+ */
+public class MigrationPreviewTest extends ReactivenessFixtureTestCase {
+
+    private static final String PROGRESS_TASK = "    void load() {\n"
+        + "        new LoadTask().execute(\"url\");\n"
+        + "    }\n"
+        + "    class LoadTask extends AsyncTask<String, String, String> {\n"
+        + "        private int loaded;\n"
+        + "        protected String doInBackground(String... urls) {\n"
+        + "            publishProgress(urls[0]);\n"
+        + "            return urls[0];\n"
+        + "        }\n"
+        + "        protected void onProgressUpdate(String... progress) {\n"
+        + "            setTitle(progress[0]);\n"
+        + "        }\n"
+        + "        protected void onPostExecute(String result) {\n"
+        + "            loaded += 1;\n"
+        + "            setTitle(result + loaded);\n"
+        + "        }\n"
+        + "    }\n";
+
+    private static final String ANONYMOUS_TASKS = "    void load() {\n"
+        + "        new AsyncTask<String, Void, String>() {\n"
+        + "            protected String doInBackground(String... urls) {\n"
+        + "                return urls[0];\n"
+        + "            }\n"
+        + "            protected void onPostExecute(String result) {\n"
+        + "                setTitle(result);\n"
+        + "            }\n"
+        + "        }.execute(\"first\");\n"
+        + "        new AsyncTask<String, Void, Integer>() {\n"
+        + "            protected Integer doInBackground(String... urls) {\n"
+        + "                return urls[0].length();\n"
+        + "            }\n"
+        + "            protected void onPostExecute(Integer result) {\n"
+        + "                setTitle(\"\" + result);\n"
+        + "            }\n"
+        + "        }.execute(\"second\");\n"
+        + "    }\n";
+
+    public void testPreviewIsTheMigrationOfTheFile() {
+        PsiFile file = addActivity(PROGRESS_TASK).getContainingFile();
+        String original = file.getText();
+        MigrationPreview preview = MigrationPreview.computeAll(getProject(), new EmptyProgressIndicator());
+        assertEquals(1, preview.getCandidates().size());
+        FileChange change = preview.findChange(file);
+        assertNotNull(change);
+        // the preview leaves the project as it is
+        assertEquals(original, file.getText());
+        assertEquals(original, change.getBeforeText());
+
+        new RxJavaAction().migrate(getProject(), GlobalSearchScope.fileScope(file), new MigrationReport());
+        assertEquals(file.getText(), change.getAfterText());
+    }
+
+    public void testAppliedPreviewWritesThePreviewedText() {
+        PsiFile file = addActivity(PROGRESS_TASK).getContainingFile();
+        MigrationPreview preview = MigrationPreview.computeAll(getProject(), new EmptyProgressIndicator());
+        String afterText = preview.findChange(file).getAfterText();
+        assertTrue(afterText.contains("Observer<String> publishProgress"));
+        assertTrue(afterText.contains("BehaviorSubject.create()"));
+        assertTrue(afterText.contains("onDestroy"));
+        assertTrue(preview.apply(getProject()));
+        assertEquals(afterText, file.getText());
+    }
+
+    public void testChangedFileIsNotApplied() {
+        PsiClass activity = addActivity(PROGRESS_TASK);
+        PsiFile file = activity.getContainingFile();
+        MigrationPreview preview = MigrationPreview.computeAll(getProject(), new EmptyProgressIndicator());
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> activity.getMethods()[0].delete());
+        String changed = file.getText();
+        assertFalse(preview.apply(getProject()));
+        assertEquals(changed, file.getText());
+    }
+
+    public void testExcludedAnonymousTaskKeepsItsPlace() {
+        PsiFile file = addActivity(ANONYMOUS_TASKS).getContainingFile();
+        List<MigrationCandidate> candidates = MigrationPreview.findCandidates(getProject(),
+            new EmptyProgressIndicator());
+        assertEquals(2, candidates.size());
+        MigrationPreview preview = MigrationPreview.compute(getProject(),
+            Collections.singletonList(candidates.get(1)));
+        assertEquals(Collections.singletonList(candidates.get(1)), preview.getCandidates());
+        String afterText = preview.findChange(file).getAfterText();
+        // the second task takes the first free name, as the migration of the applied text does
+        assertTrue(afterText.contains("doAsync1"));
+        assertTrue(afterText.contains("execute(\"first\")"));
+        assertFalse(afterText.contains("execute(\"second\")"));
+    }
+
+    public void testBlockingGetHotspotIsNotPreviewed() {
+        addActivity("    void load() {\n"
+            + "        try {\n"
+            + "            setTitle(\"loading\");\n"
+            + "            setTitle(new LoadTask().execute(\"url\").get());\n"
+            + "        } catch (Exception e) {\n"
+            + "            setTitle(e.getMessage());\n"
+            + "        }\n"
+            + "    }\n"
+            + "    class LoadTask extends AsyncTask<String, Void, String> {\n"
+            + "        protected String doInBackground(String... urls) {\n"
+            + "            return urls[0];\n"
+            + "        }\n"
+            + "    }\n");
+        MigrationPreview preview = MigrationPreview.computeAll(getProject(), new EmptyProgressIndicator());
+        assertEmpty(preview.getCandidates());
+        assertEmpty(preview.getChanges());
+    }
+}
@@ -0,0 +1,95 @@
+package gr.aueb.reactiveness.refactor;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiErrorElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+import gr.aueb.reactiveness.actions.RxJavaAction;
+import gr.aueb.reactiveness.report.MigrationReport;
+
+/**
+ * @author taggelis
+ */
+public class AsyncTaskRefactorTest extends ReactivenessFixtureTestCase {
+
+    public void testTaskOfTheBenchmarkCorpusBecomesAChain() {
+        String migrated = migrate(addActivity("    void load() {\n"
+            + "        new LoadTask().execute(\"url\");\n"
+            + "    }\n"
+            + "    private class LoadTask extends AsyncTask<String, String, String> {\n"
+            + "        @Override\n"
+            + "        protected void onPreExecute() {\n"
+            + "            setTitle(\"loading\");\n"
+            + "        }\n"
+            + "        @Override\n"
+            + "        protected String doInBackground(String... params) {\n"
+            + "            publishProgress(params[0]);\n"
+            + "            return params[0];\n"
+            + "        }\n"
+            + "        @Override\n"
+            + "        protected void onProgressUpdate(String... values) {\n"
+            + "            setTitle(values[0]);\n"
+            + "        }\n"
+            + "        @Override\n"
+            + "        protected void onPostExecute(String result) {\n"
+            + "            setTitle(result);\n"
+            + "        }\n"
+            + "    }\n"));
+        assertFalse(migrated.contains("class LoadTask"));
+        assertTrue(migrated.contains("private static final CompositeDisposable compositeDisposable = "
+            + "new CompositeDisposable();"));
+        assertTrue(migrated.contains("private String doLoadTask(Observer<String> publishProgress, "
+            + "String... params) { publishProgress.onNext(params[0]); return params[0]; }"));
+        assertTrue(migrated.contains("private void loadTaskPreExecute() { setTitle(\"loading\"); }"));
+        assertTrue(migrated.contains("private void loadTaskPostExecute(String result) { setTitle(result); }"));
+        assertTrue(migrated.contains("BehaviorSubject<String> progressSubject = BehaviorSubject.create();"));
+        assertTrue(migrated.contains(".subscribe(s -> loadTaskProgressUpdate(s)); compositeDisposable.add(disposal);"));
+        assertTrue(migrated.contains("loadTaskPreExecute(); Disposable d2 = Single.fromCallable(() -> "
+            + "doLoadTask(progressSubject, \"url\")) .subscribeOn(Schedulers.io()) "
+            + ".observeOn(AndroidSchedulers.mainThread()) .subscribe(s -> loadTaskPostExecute(s)); "
+            + "compositeDisposable.add(d2);"));
+        assertTrue(migrated.contains("protected void onDestroy() { super.onDestroy(); if (compositeDisposable != "
+            + "null && !compositeDisposable.isDisposed()) { compositeDisposable.clear(); } }"));
+    }
+
+    public void testConstructorArgumentIsEvaluatedWhereTheTaskIsCreated() {
+        String migrated = migrate(addActivity("    void load() {\n"
+            + "        String url = \"first\";\n"
+            + "        LoadTask task = new LoadTask(url);\n"
+            + "        url = \"second\";\n"
+            + "        task.execute();\n"
+            + "    }\n"
+            + "    private class LoadTask extends AsyncTask<Void, Void, String> {\n"
+            + "        private final String url;\n"
+            + "        LoadTask(String url) {\n"
+            + "            this.url = url;\n"
+            + "        }\n"
+            + "        @Override\n"
+            + "        protected String doInBackground(Void... params) {\n"
+            + "            return url;\n"
+            + "        }\n"
+            + "        @Override\n"
+            + "        protected void onPostExecute(String result) {\n"
+            + "            setTitle(result);\n"
+            + "        }\n"
+            + "    }\n"));
+        assertFalse(migrated.contains("LoadTask task"));
+        assertTrue(migrated.contains("String url = \"first\"; final String d2Url = url; url = \"second\";"));
+        assertTrue(migrated.contains("Single.fromCallable(() -> doLoadTask(d2Url"));
+    }
+
+    /**
+     * Migrate the file of the activity like the migration action does.
+     *
+     * @param activity the activity
+     * @return the migrated text of the file with its white space collapsed
+     */
+    private String migrate(final PsiClass activity) {
+        PsiFile file = activity.getContainingFile();
+        new RxJavaAction().migrate(getProject(), GlobalSearchScope.fileScope(file), new MigrationReport());
+        assertNull(PsiTreeUtil.findChildOfType(file, PsiErrorElement.class));
+        return file.getText().replaceAll("\\s+", " ");
+    }
+}
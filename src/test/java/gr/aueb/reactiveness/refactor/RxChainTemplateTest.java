@@ -0,0 +1,92 @@
+package gr.aueb.reactiveness.refactor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author taggelis
+ */
+public class RxChainTemplateTest {
+
+    @Test
+    public void chainRunsOnIoAndDeliversOnMainThread() {
+        RxChainTemplate template = new RxChainTemplate("downloadTask", "d1");
+        template.setArguments("url");
+        assertFalse(template.isRetained());
+        assertNull(template.getCacheField());
+        assertEquals("Disposable d1 = Single.fromCallable(() -> doDownloadTask(url))\n"
+            + ".subscribeOn(Schedulers.io())\n"
+            + ".observeOn(AndroidSchedulers.mainThread())\n"
+            + ".subscribe(s -> downloadTaskPostExecute(s));", template.toStatementText());
+    }
+
+    @Test
+    public void everyRetainedSiteHasItsOwnCache() {
+        RxChainTemplate first = new RxChainTemplate("downloadTask", "d1");
+        first.setRetained("RetainedTasks", null);
+        RxChainTemplate second = new RxChainTemplate("downloadTask", "d2");
+        second.setRetained("RetainedTasks", "downloadTaskPreExecute()");
+        assertEquals("downloadTaskD1", first.getCacheField());
+        assertEquals("downloadTaskD2", second.getCacheField());
+        assertTrue(second.toRetainingStatementsText().contains("downloadTaskPreExecute();\n"
+            + "if (d2Retained.downloadTaskD2 == null) {\n"
+            + "d2Retained.downloadTaskD2 = Single.fromCallable(() -> doDownloadTask())\n"
+            + ".subscribeOn(Schedulers.io())\n"
+            + ".cache();"));
+        assertTrue(second.toStatementText().startsWith("Disposable d2 = d2Retained.downloadTaskD2\n"));
+    }
+
+    @Test
+    public void holderIsUnpackedOnTheMainThread() {
+        RxChainTemplate template = new RxChainTemplate("downloadTask", "d1");
+        template.setResultHolder("String", "result", "names, count");
+        assertTrue(template.toStatementText().endsWith(".subscribe(d1Holder -> downloadTaskPostExecute("
+            + "d1Holder.result, d1Holder.names, d1Holder.count));"));
+    }
+
+    @Test
+    public void continuationRunsBeforePostExecute() {
+        RxChainTemplate template = new RxChainTemplate("downloadTask", "d1");
+        template.setContinuation("page", "show(page);");
+        assertTrue(template.toStatementText().endsWith(".subscribe(page -> {\n"
+            + "show(page);\n"
+            + "downloadTaskPostExecute(page);\n"
+            + "});"));
+    }
+
+    @Test
+    public void holderContinuationRunsBeforePostExecute() {
+        RxChainTemplate template = new RxChainTemplate("downloadTask", "d1");
+        template.setResultHolder("String", "result", "count");
+        template.setContinuation("page", "show(page);");
+        assertTrue(template.toStatementText().endsWith(".subscribe(d1Holder -> {\n"
+            + "String page = d1Holder.result;\n"
+            + "show(page);\n"
+            + "downloadTaskPostExecute(page, d1Holder.count);\n"
+            + "});"));
+    }
+
+    @Test
+    public void traceEndsOnDeliveryErrorOrDisposal() {
+        RxChainTemplate template = new RxChainTemplate("downloadTask", "d1");
+        template.setInstrumentationTag("MainActivity.downloadTask");
+        String text = template.toStatementText();
+        assertTrue(text.contains("RxTaskMetrics.Trace d1Trace = RxTaskMetrics.begin(\"MainActivity.downloadTask\");"));
+        assertTrue(text.contains(".observeOn(AndroidSchedulers.mainThread())\n"
+            + ".doOnSuccess(d1Result -> d1Trace.delivered())\n"
+            + ".doOnError(d1Error -> d1Trace.failed())\n"
+            + ".doOnDispose(d1Trace::disposed);\n"));
+    }
+
+    @Test
+    public void sharedBackgroundReceivesTheLiteralsFirst() {
+        RxChainTemplate template = new RxChainTemplate("downloadTask", "d1");
+        template.setArguments("url");
+        template.setSharedBackground("SharedTasks.downloadTask", "\"json\"");
+        assertTrue(template.toStatementText().startsWith("Disposable d1 = SharedTasks.downloadTask(\"json\", url)\n"));
+    }
+}
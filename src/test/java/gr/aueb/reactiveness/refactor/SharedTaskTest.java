@@ -0,0 +1,78 @@
+package gr.aueb.reactiveness.refactor;
+
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.search.GlobalSearchScope;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+import gr.aueb.reactiveness.report.MigrationReport;
+import gr.aueb.reactiveness.settings.ReactivenessSettings;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author taggelis
+ */
+public class SharedTaskTest extends ReactivenessFixtureTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ReactivenessSettings.getInstance().setShareClonedTasks(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            ReactivenessSettings.getInstance().setShareClonedTasks(false);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testHelperOfAnotherPackageIsCalledByItsQualifiedName() {
+        PsiClass first = addDecodingActivity("a", "FirstActivity", "\"x\"");
+        PsiClass second = addDecodingActivity("b", "SecondActivity", "\"y\"");
+        Map<PsiClass, PsiClass> tasks = new LinkedHashMap<>();
+        tasks.put(first, first.findInnerClassByName("DecodeTask", false));
+        tasks.put(second, second.findInnerClassByName("DecodeTask", false));
+        new AsyncTaskRefactor(new MigrationReport())
+            .refactorInnerAsyncTask(JavaPsiFacade.getElementFactory(getProject()), tasks);
+
+        // the helper is generated next to the first task, the narrowed constants of the array stay as they are
+        PsiClass helper = JavaPsiFacade.getInstance(getProject())
+            .findClass("com.example.a." + SharedTask.HELPER_CLASS, GlobalSearchScope.allScope(getProject()));
+        assertNotNull(helper);
+        String helperText = helper.getContainingFile().getText().replaceAll("\\s+", " ");
+        assertTrue(helperText.contains("public static Single<String> decodeTask(final String value1, "
+            + "final String... paths) { return Single.fromCallable(() -> { byte[] header = new byte[]{1, 2}; "
+            + "return paths[0] + header.length + value1; }); }"));
+
+        String firstText = first.getContainingFile().getText().replaceAll("\\s+", " ");
+        assertTrue(firstText.contains("Disposable d2 = SharedTasks.decodeTask(\"x\", \"url\")"));
+        String secondText = second.getContainingFile().getText().replaceAll("\\s+", " ");
+        assertTrue(secondText.contains("Disposable d2 = com.example.a.SharedTasks.decodeTask(\"y\", \"url\")"));
+        assertFalse(secondText.contains("import com.example.a"));
+        assertFalse(secondText.contains("doDecodeTask"));
+    }
+
+    private PsiClass addDecodingActivity(final String packageName, final String className, final String suffix) {
+        return myFixture.addClass("package com.example." + packageName + ";\n\n"
+            + "import android.app.Activity;\n"
+            + "import android.os.AsyncTask;\n\n"
+            + "public class " + className + " extends Activity {\n"
+            + "    void load() {\n"
+            + "        new DecodeTask().execute(\"url\");\n"
+            + "    }\n"
+            + "    private class DecodeTask extends AsyncTask<String, Void, String> {\n"
+            + "        protected String doInBackground(String... paths) {\n"
+            + "            byte[] header = new byte[]{1, 2};\n"
+            + "            return paths[0] + header.length + " + suffix + ";\n"
+            + "        }\n"
+            + "        protected void onPostExecute(String result) {\n"
+            + "            setTitle(result);\n"
+            + "        }\n"
+            + "    }\n"
+            + "}\n");
+    }
+}
@@ -0,0 +1,66 @@
+package gr.aueb.reactiveness.report;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.search.GlobalSearchScope;
+import gr.aueb.reactiveness.ReactivenessFixtureTestCase;
+import gr.aueb.reactiveness.actions.RxJavaAction;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author taggelis
+ */
+public class MigrationReportTest extends ReactivenessFixtureTestCase {
+
+    public void testRunRecordsCountersAndPhases() {
+        PsiClass activity = addActivity("    void load() {\n"
+            + "        new LoadTask().execute(\"url\");\n"
+            + "    }\n"
+            + "    class LoadTask extends AsyncTask<String, Void, String> {\n"
+            + "        protected String doInBackground(String... urls) {\n"
+            + "            return urls[0];\n"
+            + "        }\n"
+            + "        protected void onPostExecute(String result) {\n"
+            + "            setTitle(result);\n"
+            + "        }\n"
+            + "    }\n");
+        String path = activity.getContainingFile().getVirtualFile().getPath();
+        MigrationReport report = new MigrationReport();
+        new RxJavaAction().migrate(getProject(), GlobalSearchScope.fileScope(activity.getContainingFile()), report);
+
+        assertEquals(1, report.getCounter(MigrationReport.FILES));
+        assertEquals(1, report.getCounter(MigrationReport.INNER_TASKS));
+        assertEquals(1, report.getCounter(MigrationReport.MIGRATED_TASKS));
+        assertEquals(0, report.getCounter(MigrationReport.REJECTED_TASKS));
+        assertTrue(report.getWallNanos(MigrationPhase.VALIDATION) > 0);
+        assertTrue(report.getWallNanos(MigrationPhase.PSI_REWRITE) > 0);
+        assertEquals(0, report.getWallNanos(MigrationPhase.CLONE_DETECTION));
+
+        Map<String, Object> json = report.toJson(getProject(), report.getElapsedNanos());
+        Map<?, ?> file = (Map<?, ?>) ((Map<?, ?>) json.get("files")).get(path);
+        assertNotNull(file);
+        assertEquals(1, file.get("tasks"));
+        assertTrue((Integer) file.get("count") > 0);
+        assertTrue(((Map<?, ?>) json.get("phases")).containsKey(MigrationPhase.REFORMAT.name()));
+    }
+
+    public void testFindingIsLocatedInItsFile() {
+        PsiClass activity = addActivity("    void load() {\n"
+            + "        setTitle(\"url\");\n"
+            + "    }\n");
+        PsiMethod load = activity.findMethodsByName("load", false)[0];
+        MigrationReport report = new MigrationReport();
+        report.addFinding(MigrationReport.BLOCKING_GET, load, "message");
+
+        assertEquals(1, report.getFindings(MigrationReport.BLOCKING_GET));
+        assertEquals(0, report.getFindings(MigrationReport.SHARED_FIELD));
+        List<?> findings = (List<?>) report.toJson(getProject(), 0).get("findings");
+        Map<?, ?> finding = (Map<?, ?>) findings.get(0);
+        assertEquals(activity.getContainingFile().getVirtualFile().getPath(), finding.get("path"));
+        assertEquals(10, finding.get("line"));
+        assertEquals(5, finding.get("column"));
+        assertEquals("message", finding.get("message"));
+    }
+}